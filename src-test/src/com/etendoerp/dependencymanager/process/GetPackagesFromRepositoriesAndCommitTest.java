@@ -23,15 +23,25 @@ import org.openbravo.service.db.DalConnectionProvider;
 import org.openbravo.service.db.DataExportService;
 import org.openbravo.test.base.TestConstants;
 
+import com.etendoerp.dependencymanager.sync.CatalogDeltaWriter;
+import com.etendoerp.dependencymanager.sync.PackageCatalog;
+import com.etendoerp.dependencymanager.sync.PackageDatasetReader;
+
 import javax.inject.Inject;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -220,6 +230,61 @@ public class GetPackagesFromRepositoriesAndCommitTest extends WeldBaseTest {
         }
     }
 
+    /**
+     * Test case to verify that {@code updateCatalog} starts the catalog at revision 1, writes a delta with the
+     * changed and removed rows when the dataset changes, and writes nothing when it does not change.
+     *
+     * @throws Exception if an I/O error occurs during file operations.
+     */
+    @Test
+    public void testUpdateCatalog() throws Exception {
+        Path projectPath = Files.createTempDirectory("etdep-catalog");
+        String modLocation = "/modules/";
+        String moduleJavaPackage = "com.etendoerp.test";
+        String firstXml = datasetXml(packageRow("P1", "first") + packageRow("P2", "second"));
+        String secondXml = datasetXml(packageRow("P1", "renamed"));
+        File catalogFolder = new File(projectPath + modLocation + moduleJavaPackage + "/referencedata/catalog");
+        try {
+            process.updateCatalog(firstXml, projectPath.toString(), modLocation, moduleJavaPackage);
+            process.saveXMLToFile(firstXml, projectPath.toString(), modLocation, moduleJavaPackage);
+            process.updateCatalog(secondXml, projectPath.toString(), modLocation, moduleJavaPackage);
+            process.saveXMLToFile(secondXml, projectPath.toString(), modLocation, moduleJavaPackage);
+            process.updateCatalog(secondXml, projectPath.toString(), modLocation, moduleJavaPackage);
+
+            PackageCatalog catalog;
+            try (InputStream in = Files.newInputStream(new File(catalogFolder, PackageCatalog.CATALOG_FILE_NAME).toPath())) {
+                catalog = PackageCatalog.read(in);
+            }
+            assertEquals(2L, catalog.revision);
+            assertEquals(1L, catalog.oldestRevision);
+
+            List<PackageDatasetReader.DatasetRow> rows = new ArrayList<>();
+            try (InputStream in = Files.newInputStream(new File(catalogFolder, PackageCatalog.deltaFileName(2)).toPath())) {
+                PackageDatasetReader.read(in, rows::add);
+            }
+            assertEquals(3, rows.size());
+            assertEquals(CatalogDeltaWriter.REVISION_ROW, rows.get(0).entityName());
+            assertEquals("renamed", rows.get(1).get("artifact"));
+            assertEquals(CatalogDeltaWriter.DELETED_ROW, rows.get(2).entityName());
+            assertEquals("P2", rows.get(2).get("id"));
+        } finally {
+            try (Stream<Path> files = Files.walk(projectPath)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static String datasetXml(String rows) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><ob:Openbravo xmlns:ob=\"http://www.openbravo.com\">"
+                + rows + "</ob:Openbravo>";
+    }
+
+    private static String packageRow(String id, String artifact) {
+        return "<ETDEP_Package id=\"" + id + "\"><id>" + id + "</id><active>true</active><group>com.etendoerp</group>"
+                + "<artifact>" + artifact + "</artifact><isBundle>false</isBundle></ETDEP_Package>";
+    }
 
     /**
      * Test case for verifying the {@code createErrorOBError} method.
@@ -0,0 +1,202 @@
+package com.etendoerp.dependencymanager.process;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.base.weld.test.WeldBaseTest;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.test.base.TestConstants;
+
+import com.etendoerp.dependencymanager.data.Package;
+import com.etendoerp.dependencymanager.data.PackageDependency;
+import com.etendoerp.dependencymanager.data.PackageVersion;
+import com.etendoerp.dependencymanager.sync.MirroredPackageSource;
+import com.etendoerp.dependencymanager.sync.PackageRepositorySource;
+import com.etendoerp.dependencymanager.sync.SyncFiles;
+import com.etendoerp.dependencymanager.sync.SyncMetrics;
+
+/**
+ * Runs the {@link GetPackagesFromRepositories} process against a {@link GitHubApiStub}, without network access.
+ * <p>
+ * The functional test always runs. The benchmarks synchronize catalogs of 1k, 10k and 50k versions, first
+ * with a full resync and then incrementally, and log the time of each run. They are slow, so they only run
+ * when the {@value #BENCHMARK_PROPERTY} system property is true, e.g.
+ * {@code ./gradlew test --tests "*GetPackagesFromRepositoriesBenchmarkTest" -Detdep.sync.benchmark=true}.
+ */
+public class GetPackagesFromRepositoriesBenchmarkTest extends WeldBaseTest {
+    private static final Logger log = LogManager.getLogger();
+    private static final String BENCHMARK_PROPERTY = "etdep.sync.benchmark";
+    private static final String BENCHMARK_LATENCY_PROPERTY = "etdep.sync.benchmark.latency";
+    private static final int VERSIONS_PER_PACKAGE = 10;
+    private static final String[] OVERRIDDEN_PROPERTIES = { PackageRepositorySource.SOURCE_PROPERTY,
+        MirroredPackageSource.SYNC_API_MIRRORS_PROPERTY, MirroredPackageSource.MAVEN_MIRRORS_PROPERTY,
+        MirroredPackageSource.HEDGE_DELAY_PROPERTY, SyncFiles.CACHE_DIR_PROPERTY };
+
+    private final Map<String, String> previousProperties = new HashMap<>();
+    private Path cacheDir;
+
+    /**
+     * Sets up the Openbravo context and a temporary cache directory, so the state of previous syncs is not used.
+     *
+     * @throws Exception if any setup operation fails.
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        OBContext.setOBContext(TestConstants.Users.SYSTEM, TestConstants.Roles.SYS_ADMIN,
+                TestConstants.Clients.SYSTEM, TestConstants.Orgs.MAIN);
+        cacheDir = Files.createTempDirectory("etdep-sync-benchmark");
+        Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+        for (String property : OVERRIDDEN_PROPERTIES) {
+            previousProperties.put(property, properties.getProperty(property));
+        }
+    }
+
+    /**
+     * Restores the overridden properties, and removes the synchronized packages and the cache directory.
+     *
+     * @throws IOException if the cache directory cannot be removed.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+        for (Map.Entry<String, String> property : previousProperties.entrySet()) {
+            if (property.getValue() == null) {
+                properties.remove(property.getKey());
+            } else {
+                properties.setProperty(property.getKey(), property.getValue());
+            }
+        }
+        deleteSyncedPackages();
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Verifies that every package and version of the stub is synchronized, following the POM redirects
+     * and skipping the missing POMs, whose versions have no dependencies, and that the run is measured.
+     */
+    @Test
+    public void testSyncFromStub() throws Exception {
+        try (GitHubApiStub stub = GitHubApiStub.start(5, 3).withMissingPoms(7)) {
+            pointTo(stub);
+            new GetPackagesFromRepositories(true).doExecute(null);
+
+            assertEquals(5L, countPackages());
+            assertEquals(15L, countVersions());
+            assertEquals(stub.getModuleDependencyCount(), countDependencies());
+
+            SyncMetrics.Snapshot metrics = SyncMetrics.forSync(GetPackagesFromRepositories.METRICS_NAME).getLastRun();
+            assertEquals(5L, metrics.get(SyncMetrics.Counter.PACKAGES));
+            assertEquals(15L, metrics.get(SyncMetrics.Counter.VERSIONS));
+            assertEquals(15L - stub.getMissingPomCount(), metrics.get(SyncMetrics.Counter.POMS_FETCHED));
+        }
+    }
+
+    @Test
+    public void benchmark1kVersions() throws Exception {
+        runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark10kVersions() throws Exception {
+        runBenchmark(1000);
+    }
+
+    @Test
+    public void benchmark50kVersions() throws Exception {
+        runBenchmark(5000);
+    }
+
+    private void runBenchmark(int packages) throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -D" + BENCHMARK_PROPERTY + "=true",
+                Boolean.getBoolean(BENCHMARK_PROPERTY));
+        long latency = Long.getLong(BENCHMARK_LATENCY_PROPERTY, 20L);
+        try (GitHubApiStub stub = GitHubApiStub.start(packages, VERSIONS_PER_PACKAGE).withLatency(latency)) {
+            pointTo(stub);
+            long start = System.nanoTime();
+            new GetPackagesFromRepositories(true).doExecute(null);
+            long fullMillis = (System.nanoTime() - start) / 1_000_000;
+            int fullRequests = stub.getRequestCount();
+
+            start = System.nanoTime();
+            new GetPackagesFromRepositories().doExecute(null);
+            long incrementalMillis = (System.nanoTime() - start) / 1_000_000;
+            int incrementalRequests = stub.getRequestCount() - fullRequests;
+
+            log.info("Sync of {} versions with {} ms of latency: full resync {} ms and {} requests, "
+                    + "incremental sync {} ms and {} requests", packages * VERSIONS_PER_PACKAGE, latency,
+                    fullMillis, fullRequests, incrementalMillis, incrementalRequests);
+            assertEquals((long) packages * VERSIONS_PER_PACKAGE, countVersions());
+        }
+    }
+
+    private void pointTo(GitHubApiStub stub) {
+        Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+        properties.setProperty(PackageRepositorySource.SOURCE_PROPERTY, PackageRepositorySource.GITHUB_SOURCE);
+        properties.setProperty(MirroredPackageSource.SYNC_API_MIRRORS_PROPERTY, stub.getApiUrl());
+        properties.setProperty(MirroredPackageSource.MAVEN_MIRRORS_PROPERTY, stub.getMavenUrl());
+        properties.setProperty(MirroredPackageSource.HEDGE_DELAY_PROPERTY, "0");
+        properties.setProperty(SyncFiles.CACHE_DIR_PROPERTY, cacheDir.toString());
+    }
+
+    private long countPackages() {
+        return OBDal.getInstance()
+                .createQuery(Package.class, "as p where p.group = :group")
+                .setNamedParameter("group", GitHubApiStub.GROUP)
+                .count();
+    }
+
+    private long countVersions() {
+        return OBDal.getInstance()
+                .createQuery(PackageVersion.class, "as pv where pv.package.group = :group")
+                .setNamedParameter("group", GitHubApiStub.GROUP)
+                .count();
+    }
+
+    private long countDependencies() {
+        return OBDal.getInstance()
+                .createQuery(PackageDependency.class, "as pd where pd.packageVersion.package.group = :group")
+                .setNamedParameter("group", GitHubApiStub.GROUP)
+                .count();
+    }
+
+    private void deleteSyncedPackages() {
+        OBDal.getInstance().getSession().clear();
+        OBDal.getInstance().getSession()
+                .createQuery("delete from " + PackageDependency.ENTITY_NAME + " pd where pd.packageVersion.id in ("
+                        + "select pv.id from " + PackageVersion.ENTITY_NAME + " pv where pv.package.group = :group)")
+                .setParameter("group", GitHubApiStub.GROUP)
+                .executeUpdate();
+        OBDal.getInstance().getSession()
+                .createQuery("delete from " + PackageVersion.ENTITY_NAME + " pv where pv.package.id in ("
+                        + "select p.id from " + Package.ENTITY_NAME + " p where p.group = :group)")
+                .setParameter("group", GitHubApiStub.GROUP)
+                .executeUpdate();
+        OBDal.getInstance().getSession()
+                .createQuery("delete from " + Package.ENTITY_NAME + " p where p.group = :group")
+                .setParameter("group", GitHubApiStub.GROUP)
+                .executeUpdate();
+        OBDal.getInstance().commitAndClose();
+    }
+}
@@ -0,0 +1,329 @@
+package com.etendoerp.dependencymanager.process;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stub of the GitHub packages API and of the GitHub Maven registry, used to run the package
+ * synchronization end to end without network access.
+ * <p>
+ * The stub serves a generated catalog of {@code packages} packages named {@code com.etdepbench.module<i>},
+ * each with {@code versionsPerPackage} versions, paginated with {@code Link} headers like the real API.
+ * Every POM depends on etendo-core and on the same version of the previous module. POMs are served through
+ * a 302 redirect to a storage path, as the registry does. Responses can be delayed and some POMs can be
+ * missing.
+ * <p>
+ * The sync is pointed at the stub with the {@code etdep.sync.mirrors.api} and {@code etdep.sync.mirrors.maven}
+ * properties, set to {@link #getApiUrl()} and {@link #getMavenUrl()}.
+ */
+public class GitHubApiStub implements AutoCloseable {
+  public static final String GROUP = "com.etdepbench";
+  public static final String ARTIFACT_PREFIX = "module";
+  public static final String CORE_VERSION_RANGE = "[22.1.0,25.1.0)";
+  private static final String PACKAGES_PATH = "/orgs/etendosoftware/packages";
+  private static final String VERSIONS_PREFIX = PACKAGES_PATH + "/maven/";
+  private static final String VERSIONS_SUFFIX = "/versions";
+  private static final String MAVEN_PATH = "/maven/";
+  private static final String STORAGE_PATH = "/storage/";
+  private static final String UPDATED_AT = "2024-01-01T00:00:00Z";
+  private static final int DEFAULT_PAGE_SIZE = 30;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final int packages;
+  private final int versionsPerPackage;
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile long latencyMillis;
+  private volatile int missingPomEvery;
+
+  private GitHubApiStub(int packages, int versionsPerPackage) throws IOException {
+    this.packages = packages;
+    this.versionsPerPackage = versionsPerPackage;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  /**
+   * Starts a stub on a free port of the loopback interface.
+   *
+   * @param packages
+   *     the number of packages of the catalog
+   * @param versionsPerPackage
+   *     the number of versions of each package
+   * @return the started stub, which must be closed
+   * @throws IOException
+   *     if the server cannot be started
+   */
+  public static GitHubApiStub start(int packages, int versionsPerPackage) throws IOException {
+    GitHubApiStub stub = new GitHubApiStub(packages, versionsPerPackage);
+    stub.server.start();
+    return stub;
+  }
+
+  /**
+   * Delays every response, to simulate the latency of the real API.
+   */
+  public GitHubApiStub withLatency(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * Answers with a 404 for one of every {@code every} POMs.
+   */
+  public GitHubApiStub withMissingPoms(int every) {
+    this.missingPomEvery = every;
+    return this;
+  }
+
+  /**
+   * @return the URL of the packages API, the value of the {@code etdep.sync.mirrors.api} property
+   */
+  public String getApiUrl() {
+    return getBaseUrl() + PACKAGES_PATH;
+  }
+
+  /**
+   * @return the URL of the Maven registry, the value of the {@code etdep.sync.mirrors.maven} property
+   */
+  public String getMavenUrl() {
+    return getBaseUrl() + MAVEN_PATH;
+  }
+
+  /**
+   * @return the number of requests received
+   */
+  public int getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * @return the number of POMs of the catalog answered with a 404
+   */
+  public int getMissingPomCount() {
+    int missing = 0;
+    for (int i = 0; i < packages; i++) {
+      for (int j = 0; j < versionsPerPackage; j++) {
+        if (isMissing(i, j)) {
+          missing++;
+        }
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * @return the number of dependencies between modules of the served POMs, the ones on etendo-core excluded
+   */
+  public int getModuleDependencyCount() {
+    int dependencies = 0;
+    for (int i = 1; i < packages; i++) {
+      for (int j = 0; j < versionsPerPackage; j++) {
+        if (!isMissing(i, j)) {
+          dependencies++;
+        }
+      }
+    }
+    return dependencies;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private String getBaseUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      requests.incrementAndGet();
+      if (latencyMillis > 0) {
+        Thread.sleep(latencyMillis);
+      }
+      String path = exchange.getRequestURI().getPath();
+      String query = exchange.getRequestURI().getRawQuery();
+      if (PACKAGES_PATH.equals(path)) {
+        servePackages(exchange, parseQuery(query));
+      } else if (path.startsWith(VERSIONS_PREFIX) && path.endsWith(VERSIONS_SUFFIX)) {
+        serveVersions(exchange, path.substring(VERSIONS_PREFIX.length(), path.length() - VERSIONS_SUFFIX.length()),
+            parseQuery(query));
+      } else if (path.startsWith(MAVEN_PATH)) {
+        servePom(exchange, path.substring(MAVEN_PATH.length()), true);
+      } else if (path.startsWith(STORAGE_PATH)) {
+        servePom(exchange, path.substring(STORAGE_PATH.length()), false);
+      } else {
+        send(exchange, 404, "{\"message\":\"Not Found\"}");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void servePackages(HttpExchange exchange, Map<String, String> query) throws IOException {
+    int page = getInt(query, "page", 1);
+    int pageSize = getInt(query, "per_page", DEFAULT_PAGE_SIZE);
+    StringBuilder body = new StringBuilder("[");
+    for (int i = (page - 1) * pageSize; i < Math.min(page * pageSize, packages); i++) {
+      if (body.length() > 1) {
+        body.append(',');
+      }
+      body.append(String.format(
+          "{\"id\":%d,\"name\":\"%s\",\"package_type\":\"maven\",\"updated_at\":\"%s\",\"repository\":{\"id\":1,\"name\":\"%s\"}}",
+          i, getPackageName(i), UPDATED_AT, GROUP + ".repository"));
+    }
+    body.append(']');
+    if (page * pageSize < packages) {
+      addNextLink(exchange, getApiUrl() + "?package_type=maven&per_page=" + pageSize + "&page=" + (page + 1));
+    }
+    send(exchange, 200, body.toString());
+  }
+
+  private void serveVersions(HttpExchange exchange, String packageName, Map<String, String> query)
+      throws IOException {
+    int packageIndex = getPackageIndex(packageName);
+    if (packageIndex < 0) {
+      send(exchange, 404, "{\"message\":\"Package not found.\"}");
+      return;
+    }
+    int page = getInt(query, "page", 1);
+    int pageSize = getInt(query, "per_page", DEFAULT_PAGE_SIZE);
+    StringBuilder body = new StringBuilder("[");
+    // Newest versions first, as the real API
+    for (int n = (page - 1) * pageSize; n < Math.min(page * pageSize, versionsPerPackage); n++) {
+      if (body.length() > 1) {
+        body.append(',');
+      }
+      body.append(String.format("{\"id\":%d,\"name\":\"%s\",\"updated_at\":\"%s\"}", n,
+          getVersion(versionsPerPackage - 1 - n), UPDATED_AT));
+    }
+    body.append(']');
+    if (page * pageSize < versionsPerPackage) {
+      addNextLink(exchange, getApiUrl() + "/maven/" + packageName + "/versions?per_page=" + pageSize + "&page="
+          + (page + 1));
+    }
+    send(exchange, 200, body.toString());
+  }
+
+  /**
+   * Serves {@code com/etdepbench/module<i>/1.0.<j>/module<i>-1.0.<j>.pom}.
+   */
+  private void servePom(HttpExchange exchange, String pomPath, boolean redirect) throws IOException {
+    String[] parts = pomPath.split("/");
+    int packageIndex = parts.length == 5 ? getPackageIndex(parts[0] + "." + parts[1] + "." + parts[2]) : -1;
+    int versionIndex = packageIndex >= 0 ? getVersionIndex(parts[3]) : -1;
+    if (versionIndex < 0 || isMissing(packageIndex, versionIndex)) {
+      send(exchange, 404, "Not Found");
+      return;
+    }
+    if (redirect) {
+      exchange.getResponseHeaders().add("Location", getBaseUrl() + STORAGE_PATH + pomPath);
+      send(exchange, 302, "");
+      return;
+    }
+    StringBuilder pom = new StringBuilder();
+    pom.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project>\n  <modelVersion>4.0.0</modelVersion>\n")
+        .append("  <groupId>").append(GROUP).append("</groupId>\n")
+        .append("  <artifactId>").append(ARTIFACT_PREFIX).append(packageIndex).append("</artifactId>\n")
+        .append("  <version>").append(getVersion(versionIndex)).append("</version>\n")
+        .append("  <properties>\n    <core.version>").append(CORE_VERSION_RANGE).append("</core.version>\n")
+        .append("  </properties>\n  <dependencies>\n")
+        .append("    <dependency>\n      <groupId>com.etendoerp.platform</groupId>\n")
+        .append("      <artifactId>etendo-core</artifactId>\n      <version>${core.version}</version>\n")
+        .append("    </dependency>\n");
+    if (packageIndex > 0) {
+      pom.append("    <dependency>\n      <groupId>").append(GROUP).append("</groupId>\n")
+          .append("      <artifactId>").append(ARTIFACT_PREFIX).append(packageIndex - 1).append("</artifactId>\n")
+          .append("      <version>${project.version}</version>\n    </dependency>\n");
+    }
+    pom.append("  </dependencies>\n</project>\n");
+    send(exchange, 200, pom.toString());
+  }
+
+  private boolean isMissing(int packageIndex, int versionIndex) {
+    return missingPomEvery > 0 && (packageIndex * versionsPerPackage + versionIndex) % missingPomEvery == 0;
+  }
+
+  private static String getPackageName(int packageIndex) {
+    return GROUP + "." + ARTIFACT_PREFIX + packageIndex;
+  }
+
+  private static String getVersion(int versionIndex) {
+    return "1.0." + versionIndex;
+  }
+
+  private int getPackageIndex(String packageName) {
+    String prefix = GROUP + "." + ARTIFACT_PREFIX;
+    if (!packageName.startsWith(prefix)) {
+      return -1;
+    }
+    int index = parseInt(packageName.substring(prefix.length()));
+    return index < packages ? index : -1;
+  }
+
+  private int getVersionIndex(String version) {
+    if (!version.startsWith("1.0.")) {
+      return -1;
+    }
+    int index = parseInt(version.substring("1.0.".length()));
+    return index < versionsPerPackage ? index : -1;
+  }
+
+  private static int parseInt(String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static void addNextLink(HttpExchange exchange, String nextUrl) {
+    exchange.getResponseHeaders().add("Link", "<" + nextUrl + ">; rel=\"next\"");
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> parameters = new HashMap<>();
+    if (query == null) {
+      return parameters;
+    }
+    for (String parameter : query.split("&")) {
+      String[] pair = parameter.split("=", 2);
+      parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+          pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+    }
+    return parameters;
+  }
+
+  private static int getInt(Map<String, String> query, String name, int defaultValue) {
+    int value = parseInt(query.getOrDefault(name, ""));
+    return value > 0 ? value : defaultValue;
+  }
+
+  private static void send(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type",
+        body.startsWith("<") ? "application/xml" : "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+    if (bytes.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+}
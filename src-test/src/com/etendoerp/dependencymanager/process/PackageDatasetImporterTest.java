@@ -0,0 +1,121 @@
+package com.etendoerp.dependencymanager.process;
+
+import static com.etendoerp.dependencymanager.DependencyManagerTestConstants.FIRST_VERSION;
+import static com.etendoerp.dependencymanager.DependencyManagerTestConstants.GROUP_COM_ETENDOERP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openbravo.base.weld.test.WeldBaseTest;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.test.base.TestConstants;
+
+import com.etendoerp.dependencymanager.DependencyManagerTestUtils;
+import com.etendoerp.dependencymanager.data.Package;
+import com.etendoerp.dependencymanager.data.PackageDependency;
+import com.etendoerp.dependencymanager.data.PackageVersion;
+import com.etendoerp.dependencymanager.sync.CatalogDeltaWriter;
+import com.etendoerp.dependencymanager.sync.PackageDatasetImporter;
+import com.etendoerp.dependencymanager.sync.PackageDatasetReader;
+import com.etendoerp.dependencymanager.util.UpdateLocalPackagesUtil;
+
+public class PackageDatasetImporterTest extends WeldBaseTest {
+
+  public static final String FROM_CORE = "21.4.0";
+  public static final String LATEST_CORE = "24.2.0";
+  public static final String DEPENDENT_PACKAGE = "dependent";
+  public static final String REMOVED_PACKAGE = "removed";
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    OBContext.setOBContext(TestConstants.Users.SYSTEM, TestConstants.Roles.SYS_ADMIN, TestConstants.Clients.SYSTEM,
+        TestConstants.Orgs.MAIN);
+  }
+
+  /**
+   * A delta that removes a version still referenced by the dependency of another version is applied,
+   * leaving the dependency without it instead of failing on the foreign key.
+   */
+  @Test
+  public void testApplyDeltaRemovingReferencedVersion() {
+    Package dependentPackage = DependencyManagerTestUtils.createPackage(DEPENDENT_PACKAGE, GROUP_COM_ETENDOERP);
+    Package removedPackage = DependencyManagerTestUtils.createPackage(REMOVED_PACKAGE, GROUP_COM_ETENDOERP);
+    PackageVersion dependentVersion = DependencyManagerTestUtils.createPackageVersion(FIRST_VERSION,
+        dependentPackage, FROM_CORE, LATEST_CORE);
+    PackageVersion removedVersion = DependencyManagerTestUtils.createPackageVersion(FIRST_VERSION, removedPackage,
+        FROM_CORE, LATEST_CORE);
+    DependencyManagerTestUtils.createPackageDependency(dependentVersion, removedVersion, REMOVED_PACKAGE,
+        GROUP_COM_ETENDOERP, FIRST_VERSION, false);
+    String dependentVersionId = dependentVersion.getId();
+    String removedVersionId = removedVersion.getId();
+
+    PackageDatasetImporter importer = PackageDatasetImporter.begin();
+    importer.stage(deletedRow(UpdateLocalPackagesUtil.ETDEP_PACKAGE_VERSION, removedVersionId));
+    importer.apply();
+    OBDal.getInstance().getSession().clear();
+
+    assertEquals(1, importer.getDeletedRows());
+    assertNull(OBDal.getInstance().get(PackageVersion.class, removedVersionId));
+    List<PackageDependency> dependencies = OBDal.getInstance()
+        .get(PackageVersion.class, dependentVersionId)
+        .getETDEPPackageDependencyList();
+    assertEquals(1, dependencies.size());
+    assertNull(dependencies.get(0).getDependencyVersion());
+  }
+
+  /**
+   * A delta that removes a package whose version is not staged, as one inserted by the sync, removes the
+   * version and its dependencies with it, and leaves the dependencies on the version without it.
+   */
+  @Test
+  public void testApplyDeltaRemovingPackageWithUnstagedVersion() {
+    Package dependentPackage = DependencyManagerTestUtils.createPackage(DEPENDENT_PACKAGE, GROUP_COM_ETENDOERP);
+    Package removedPackage = DependencyManagerTestUtils.createPackage(REMOVED_PACKAGE, GROUP_COM_ETENDOERP);
+    PackageVersion dependentVersion = DependencyManagerTestUtils.createPackageVersion(FIRST_VERSION,
+        dependentPackage, FROM_CORE, LATEST_CORE);
+    PackageVersion removedVersion = DependencyManagerTestUtils.createPackageVersion(FIRST_VERSION, removedPackage,
+        FROM_CORE, LATEST_CORE);
+    DependencyManagerTestUtils.createPackageDependency(dependentVersion, removedVersion, REMOVED_PACKAGE,
+        GROUP_COM_ETENDOERP, FIRST_VERSION, false);
+    DependencyManagerTestUtils.createPackageDependency(removedVersion, null, DEPENDENT_PACKAGE,
+        GROUP_COM_ETENDOERP, FIRST_VERSION, true);
+    String dependentVersionId = dependentVersion.getId();
+    String removedPackageId = removedPackage.getId();
+    String removedVersionId = removedVersion.getId();
+
+    PackageDatasetImporter importer = PackageDatasetImporter.begin();
+    importer.stage(deletedRow(UpdateLocalPackagesUtil.ETDEP_PACKAGE, removedPackageId));
+    importer.apply();
+    OBDal.getInstance().getSession().clear();
+
+    assertEquals(3, importer.getDeletedRows());
+    assertNull(OBDal.getInstance().get(Package.class, removedPackageId));
+    assertNull(OBDal.getInstance().get(PackageVersion.class, removedVersionId));
+    List<PackageDependency> dependencies = OBDal.getInstance()
+        .get(PackageVersion.class, dependentVersionId)
+        .getETDEPPackageDependencyList();
+    assertEquals(1, dependencies.size());
+    assertNull(dependencies.get(0).getDependencyVersion());
+  }
+
+  private static PackageDatasetReader.DatasetRow deletedRow(String entityName, String id) {
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put(CatalogDeltaWriter.ENTITY, entityName);
+    values.put(UpdateLocalPackagesUtil.ID, id);
+    return new PackageDatasetReader.DatasetRow(CatalogDeltaWriter.DELETED_ROW, values);
+  }
+
+  @After
+  public void cleanUp() {
+    OBDal.getInstance().rollbackAndClose();
+  }
+}
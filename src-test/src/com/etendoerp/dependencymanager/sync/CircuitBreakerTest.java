@@ -0,0 +1,74 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+  private static final String HOST = "api.github.com";
+
+  private final AtomicLong now = new AtomicLong(1_000_000);
+  private final CircuitBreaker breaker = new CircuitBreaker(HOST, now::get);
+
+  @Test
+  void opensAfterConsecutiveFailures() {
+    for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+      breaker.recordFailure();
+    }
+    assertDoesNotThrow(breaker::checkAllowed);
+
+    breaker.recordFailure();
+
+    assertThrows(CircuitOpenException.class, breaker::checkAllowed);
+  }
+
+  @Test
+  void successResetsConsecutiveFailures() {
+    for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+      breaker.recordFailure();
+    }
+    breaker.recordSuccess();
+    breaker.recordFailure();
+
+    assertDoesNotThrow(breaker::checkAllowed);
+  }
+
+  @Test
+  void closesWhenTrialSucceeds() {
+    open();
+    now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+
+    assertDoesNotThrow(breaker::checkAllowed);
+    // Only the trial goes through while it is in flight
+    assertThrows(CircuitOpenException.class, breaker::checkAllowed);
+
+    breaker.recordSuccess();
+
+    assertDoesNotThrow(breaker::checkAllowed);
+    assertDoesNotThrow(breaker::checkAllowed);
+  }
+
+  @Test
+  void staysOpenWhenTrialFails() {
+    open();
+    now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+    assertDoesNotThrow(breaker::checkAllowed);
+
+    breaker.recordFailure();
+    now.addAndGet(CircuitBreaker.OPEN_MILLIS - 1);
+
+    assertThrows(CircuitOpenException.class, breaker::checkAllowed);
+    now.incrementAndGet();
+    assertDoesNotThrow(breaker::checkAllowed);
+  }
+
+  private void open() {
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+      breaker.recordFailure();
+    }
+    assertThrows(CircuitOpenException.class, breaker::checkAllowed);
+  }
+}
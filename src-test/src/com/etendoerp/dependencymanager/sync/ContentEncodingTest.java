@@ -0,0 +1,103 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class ContentEncodingTest {
+  private static final byte[] BODY = "[{\"name\":\"com.etendoerp.sales\",\"package_type\":\"maven\"}]".repeat(100)
+      .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void decodesGzip() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+      out.write(BODY);
+    }
+
+    assertArrayEquals(BODY, decode(compressed.toByteArray(), "gzip"));
+    assertArrayEquals(BODY, decode(compressed.toByteArray(), " X-GZIP "));
+  }
+
+  @Test
+  void decodesZlibDeflate() throws IOException {
+    assertArrayEquals(BODY, decode(deflate(false), "deflate"));
+  }
+
+  @Test
+  void decodesRawDeflate() throws IOException {
+    assertArrayEquals(BODY, decode(deflate(true), "deflate"));
+  }
+
+  @Test
+  void keepsIdentityBodies() throws IOException {
+    assertArrayEquals(BODY, decode(BODY, null));
+    assertArrayEquals(BODY, decode(BODY, "identity"));
+  }
+
+  @Test
+  void decodesWithTheResponseHeader() throws IOException {
+    HttpHeaders headers = HttpHeaders.of(Map.of(ContentEncoding.CONTENT_ENCODING_HEADER, List.of("deflate")),
+        (name, value) -> true);
+
+    try (InputStream in = ContentEncoding.decode(new ByteArrayInputStream(deflate(false)), headers)) {
+      assertArrayEquals(BODY, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void rejectsUnsupportedEncodings() {
+    ClosedTracker body = new ClosedTracker(BODY);
+
+    IOException e = assertThrows(IOException.class, () -> ContentEncoding.decode(body, "br"));
+
+    assertEquals("Unsupported content encoding: br", e.getMessage());
+    assertTrue(body.closed);
+  }
+
+  private static byte[] decode(byte[] body, String contentEncoding) throws IOException {
+    try (InputStream in = ContentEncoding.decode(new ByteArrayInputStream(body), contentEncoding)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static byte[] deflate(boolean raw) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+      out.write(BODY);
+    } finally {
+      deflater.end();
+    }
+    return compressed.toByteArray();
+  }
+
+  private static final class ClosedTracker extends ByteArrayInputStream {
+    private boolean closed;
+
+    private ClosedTracker(byte[] body) {
+      super(body);
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LinkHeaderTest {
+  private static final String PAGES_URL = "https://api.github.com/orgs/etendosoftware/packages?page=";
+
+  @Test
+  void findsNextLinkAmongOthers() {
+    HttpHeaders headers = headers(List.of("<" + PAGES_URL + "1>; rel=\"prev\", <" + PAGES_URL + "3>; rel=\"next\", <"
+        + PAGES_URL + "5>; rel=\"last\""));
+
+    assertEquals(PAGES_URL + "3", LinkHeader.getNextUrl(headers));
+  }
+
+  @Test
+  void findsNextLinkInAnyHeaderValue() {
+    HttpHeaders headers = headers(List.of("<" + PAGES_URL + "1>; rel=\"first\"", "<" + PAGES_URL + "2>; rel=\"next\""));
+
+    assertEquals(PAGES_URL + "2", LinkHeader.getNextUrl(headers));
+  }
+
+  @Test
+  void findsNextAmongSeveralRelations() {
+    HttpHeaders headers = headers(List.of("<" + PAGES_URL + "1>; rel=\"prev first\", <" + PAGES_URL
+        + "2>; title=\"Page 2\"; rel=\"next last\""));
+
+    assertEquals(PAGES_URL + "2", LinkHeader.getNextUrl(headers));
+  }
+
+  @Test
+  void returnsNullOnTheLastPage() {
+    assertNull(LinkHeader.getNextUrl(headers(List.of("<" + PAGES_URL + "1>; rel=\"prev\", <" + PAGES_URL
+        + "1>; rel=\"first\""))));
+    assertNull(LinkHeader.getNextUrl(headers(List.of())));
+  }
+
+  @Test
+  void ignoresRelationsThatOnlyContainNext() {
+    assertNull(LinkHeader.getNextUrl(headers(List.of("<" + PAGES_URL + "2>; rel=\"nextpage\""))));
+  }
+
+  private static HttpHeaders headers(List<String> links) {
+    return HttpHeaders.of(links.isEmpty() ? Map.of() : Map.of(LinkHeader.LINK_HEADER, links), (name, value) -> true);
+  }
+}
@@ -0,0 +1,114 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.etendoerp.dependencymanager.sync.PomFailureCache.Failure;
+import com.etendoerp.dependencymanager.sync.PomFailureCache.FailureClass;
+
+class PomFailureCacheTest {
+  private static final String URL = "https://maven.pkg.github.com/etendosoftware/com/etendoerp/sales/1.0.0/sales.pom";
+  private static final String GROUP = "com.etendoerp";
+  private static final String ARTIFACT = "sales";
+  private static final String VERSION = "1.0.0";
+  private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private final TempCacheDirectory cacheDir = new TempCacheDirectory();
+
+  @BeforeEach
+  void useTempCacheDirectory() throws IOException {
+    cacheDir.create();
+  }
+
+  @AfterEach
+  void removeTempCacheDirectory() throws IOException {
+    cacheDir.delete();
+  }
+
+  @Test
+  void doublesSpacingOnConsecutiveFailures() throws IOException {
+    PomFailureCache cache = PomFailureCache.load();
+
+    for (int attempt = 1; attempt <= 3; attempt++) {
+      cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.NOT_FOUND);
+
+      Failure failure = cache.getFailure(URL);
+      assertEquals(attempt, failure.attempts);
+      assertEquals(DAY_MILLIS << (attempt - 1), failure.nextAttemptAt - failure.lastFailureAt);
+    }
+  }
+
+  @Test
+  void capsSpacing() throws IOException {
+    PomFailureCache cache = PomFailureCache.load();
+
+    for (int attempt = 1; attempt <= 20; attempt++) {
+      cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.NOT_FOUND);
+    }
+
+    Failure failure = cache.getFailure(URL);
+    assertEquals(TimeUnit.DAYS.toMillis(30), failure.nextAttemptAt - failure.lastFailureAt);
+  }
+
+  @Test
+  void resetsBackoffWhenFailureClassChanges() throws IOException {
+    PomFailureCache cache = PomFailureCache.load();
+    cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.NOT_FOUND);
+    cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.NOT_FOUND);
+
+    cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.NETWORK);
+
+    Failure failure = cache.getFailure(URL);
+    assertEquals(FailureClass.NETWORK, failure.failureClass);
+    assertEquals(1, failure.attempts);
+    assertEquals(HOUR_MILLIS, failure.nextAttemptAt - failure.lastFailureAt);
+  }
+
+  @Test
+  void skipsFailedPomsUntilDue() throws IOException {
+    PomFailureCache cache = PomFailureCache.load();
+    assertTrue(cache.isDue(URL));
+
+    cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.HTTP_ERROR);
+
+    assertFalse(cache.isDue(URL));
+    assertTrue(cache.getDueFailures().isEmpty());
+    cache.forget(URL);
+    assertTrue(cache.isDue(URL));
+  }
+
+  @Test
+  void keepsFailuresBetweenRuns() throws IOException {
+    PomFailureCache cache = PomFailureCache.load();
+    cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.PARSE);
+    cache.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.PARSE);
+    cache.save();
+
+    PomFailureCache loaded = PomFailureCache.load();
+
+    Failure failure = loaded.getFailure(URL);
+    assertEquals(FailureClass.PARSE, failure.failureClass);
+    assertEquals(2, failure.attempts);
+    assertEquals(VERSION, failure.version);
+    assertFalse(loaded.isDue(URL));
+
+    // The backoff goes on from the stored attempts
+    loaded.recordFailure(URL, GROUP, ARTIFACT, VERSION, FailureClass.PARSE);
+    assertEquals(3, loaded.getFailure(URL).attempts);
+
+    loaded.clear();
+    loaded.save();
+    assertNull(PomFailureCache.load().getFailure(URL));
+  }
+}
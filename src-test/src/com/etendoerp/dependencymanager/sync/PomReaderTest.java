@@ -0,0 +1,106 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+class PomReaderTest {
+  private static final String GROUP = "com.etendoerp";
+  private static final String PROJECT_VERSION = "1.2.0";
+  private static final String PARENT_VERSION = "3.0.0";
+
+  @Test
+  void resolvesProjectVersion() throws Exception {
+    PomReader.Pom pom = read(project("<version>" + PROJECT_VERSION + "</version>",
+        dependency("sales", "${project.version}")));
+
+    assertEquals(PROJECT_VERSION, pom.version());
+    assertEquals(PROJECT_VERSION, pom.resolve(pom.dependencies().get(0).version()));
+  }
+
+  @Test
+  void resolvesParentVersion() throws Exception {
+    PomReader.Pom pom = read(project(parent() + "<version>" + PROJECT_VERSION + "</version>",
+        dependency("sales", "${parent.version}") + dependency("purchases", "${project.parent.version}")));
+
+    assertEquals(PARENT_VERSION, pom.parent().version());
+    assertEquals(PARENT_VERSION, pom.resolve(pom.dependencies().get(0).version()));
+    assertEquals(PARENT_VERSION, pom.resolve(pom.dependencies().get(1).version()));
+  }
+
+  @Test
+  void inheritsProjectVersionFromParent() throws Exception {
+    PomReader.Pom pom = read(project(parent(), dependency("sales", "${project.version}")));
+
+    assertNull(pom.version());
+    assertEquals(PARENT_VERSION, pom.resolve(pom.dependencies().get(0).version()));
+  }
+
+  @Test
+  void resolvesCustomProperties() throws Exception {
+    PomReader.Pom pom = read(project("<properties><core.version>[22.1.0,25.1.0)</core.version>"
+            + "<sales.major>2</sales.major></properties>",
+        dependency("etendo-core", "${core.version}") + dependency("sales", "${sales.major}.1.0")));
+
+    assertEquals("[22.1.0,25.1.0)", pom.resolve(pom.dependencies().get(0).version()));
+    assertEquals("2.1.0", pom.resolve(pom.dependencies().get(1).version()));
+  }
+
+  @Test
+  void keepsUnknownReferences() throws Exception {
+    PomReader.Pom pom = read(project("<version>" + PROJECT_VERSION + "</version>",
+        dependency("sales", "${unknown.version}-${project.version}")));
+
+    assertEquals("${unknown.version}-" + PROJECT_VERSION, pom.resolve(pom.dependencies().get(0).version()));
+    assertNull(pom.resolve(null));
+  }
+
+  @Test
+  void stopsAfterDependencies() throws Exception {
+    // The content after the dependencies is not even well-formed, it must not be read
+    PomReader.Pom pom = read("<project><dependencies>" + dependency("sales", "${late.version}")
+        + "</dependencies><properties><late.version>1.0.0</late.version></properties><build><plugins>");
+
+    assertEquals(1, pom.dependencies().size());
+    assertEquals("${late.version}", pom.resolve(pom.dependencies().get(0).version()));
+  }
+
+  @Test
+  void ignoresDependencyManagementAndExclusions() throws Exception {
+    PomReader.Pom pom = read(project("<dependencyManagement><dependencies>" + dependency("managed", "9.9.9")
+            + "</dependencies></dependencyManagement>",
+        "<dependency><groupId>" + GROUP + "</groupId><artifactId>sales</artifactId><version>1.0.0</version>"
+            + "<exclusions><exclusion><groupId>org.excluded</groupId><artifactId>excluded</artifactId>"
+            + "<version>0.0.1</version></exclusion></exclusions></dependency>"));
+
+    List<PomReader.Dependency> dependencies = pom.dependencies();
+    assertEquals(1, dependencies.size());
+    assertEquals(new PomReader.Dependency(GROUP, "sales", "1.0.0"), dependencies.get(0));
+  }
+
+  private static PomReader.Pom read(String pom) throws XMLStreamException {
+    return PomReader.read(new ByteArrayInputStream(pom.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String project(String header, String dependencies) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><project><modelVersion>4.0.0</modelVersion>" + header
+        + "<dependencies>" + dependencies + "</dependencies></project>";
+  }
+
+  private static String parent() {
+    return "<parent><groupId>" + GROUP + "</groupId><artifactId>parent</artifactId><version>" + PARENT_VERSION
+        + "</version></parent>";
+  }
+
+  private static String dependency(String artifact, String version) {
+    return "<dependency><groupId>" + GROUP + "</groupId><artifactId>" + artifact + "</artifactId><version>"
+        + version + "</version></dependency>";
+  }
+}
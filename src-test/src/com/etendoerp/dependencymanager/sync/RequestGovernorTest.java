@@ -0,0 +1,181 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openbravo.base.exception.OBException;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the {@link RequestGovernor}. The waits are kept short by using budgets that reset, or hosts that
+ * ask to retry, within a second, and only their lower bound is checked.
+ */
+class RequestGovernorTest {
+  private static final String HOST = "api.github.com";
+  private static final int MAX_CONCURRENCY = 4;
+  private static final int PACING_THRESHOLD = 500;
+  private static final long MAX_PAUSE_MILLIS = 60_000;
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_FORBIDDEN = 403;
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private final RequestGovernor governor = new RequestGovernor(HOST, MAX_CONCURRENCY, PACING_THRESHOLD,
+      MAX_PAUSE_MILLIS);
+  private HttpServer server;
+
+  @AfterEach
+  void stopServer() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void spacesRequestsBelowThePacingThreshold() throws Exception {
+    long remaining = 10;
+    long resetAt = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 2;
+    governor.acquire();
+    governor.release(HTTP_OK, headers(Map.of(RequestGovernor.RATE_LIMIT_REMAINING_HEADER, String.valueOf(remaining),
+        RequestGovernor.RATE_LIMIT_RESET_HEADER, String.valueOf(resetAt))));
+
+    long start = System.currentTimeMillis();
+    governor.acquire();
+    long interval = (resetAt * 1000 - start) / remaining;
+    governor.release(HTTP_OK, headers(Map.of()));
+    governor.acquire();
+
+    // The rest of the budget is spread until the reset, at least a second away
+    assertTrue(interval >= 100);
+    assertTrue(System.currentTimeMillis() - start >= interval - 10);
+  }
+
+  @Test
+  void pausesUntilTheHostAllowsRequests() throws Exception {
+    governor.acquire();
+    governor.release(HTTP_TOO_MANY_REQUESTS, headers(Map.of(RequestGovernor.RETRY_AFTER_HEADER, "1")));
+
+    long start = System.currentTimeMillis();
+    governor.acquire();
+
+    assertTrue(System.currentTimeMillis() - start >= 990);
+  }
+
+  @Test
+  void failsInsteadOfPausingLongerThanTheMaximum() throws Exception {
+    governor.acquire();
+    governor.release(HTTP_FORBIDDEN, headers(Map.of(RequestGovernor.RATE_LIMIT_REMAINING_HEADER, "0",
+        RequestGovernor.RATE_LIMIT_RESET_HEADER,
+        String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600))));
+
+    long start = System.currentTimeMillis();
+    assertThrows(OBException.class, governor::acquire);
+    assertThrows(OBException.class, () -> governor.acquire(1000));
+    assertTrue(System.currentTimeMillis() - start < 1000);
+  }
+
+  @Test
+  void retriesTooManyRequests() throws Exception {
+    AtomicInteger requests = startServer(new ArrayDeque<>(List.of(
+        new StubResponse(HTTP_TOO_MANY_REQUESTS, Map.of(RequestGovernor.RETRY_AFTER_HEADER, "0")),
+        new StubResponse(HTTP_OK, Map.of()))));
+
+    HttpResponse<String> response = send();
+
+    assertEquals(HTTP_OK, response.statusCode());
+    assertEquals("200", response.body());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  void retriesForbiddenOnlyWhenRateLimited() throws Exception {
+    AtomicInteger requests = startServer(new ArrayDeque<>(List.of(
+        new StubResponse(HTTP_FORBIDDEN, Map.of(RequestGovernor.RETRY_AFTER_HEADER, "0")),
+        new StubResponse(HTTP_FORBIDDEN, Map.of()),
+        new StubResponse(HTTP_OK, Map.of()))));
+
+    HttpResponse<String> response = send();
+
+    // The second 403 carries no rate limit headers, so it is the answer
+    assertEquals(HTTP_FORBIDDEN, response.statusCode());
+    assertEquals("403", response.body());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  void returnsTheLastRateLimitedResponse() throws Exception {
+    AtomicInteger requests = startServer(new ArrayDeque<>());
+
+    HttpResponse<String> response = send();
+
+    assertEquals(HTTP_TOO_MANY_REQUESTS, response.statusCode());
+    assertEquals("429", response.body());
+    assertEquals(4, requests.get());
+  }
+
+  private HttpResponse<String> send() throws IOException, InterruptedException {
+    URI uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+    return governor.send(HttpClient.newHttpClient(), HttpRequest.newBuilder(uri).GET().build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  /**
+   * Starts a server that answers with the given responses in order, and then with 429s that ask to retry
+   * right away. The body of each response is its status.
+   *
+   * @return the number of requests received
+   */
+  private AtomicInteger startServer(Deque<StubResponse> responses) throws IOException {
+    AtomicInteger requests = new AtomicInteger();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      try (exchange) {
+        requests.incrementAndGet();
+        StubResponse response;
+        synchronized (responses) {
+          response = responses.isEmpty()
+              ? new StubResponse(HTTP_TOO_MANY_REQUESTS, Map.of(RequestGovernor.RETRY_AFTER_HEADER, "0"))
+              : responses.poll();
+        }
+        response.headers().forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+        byte[] body = String.valueOf(response.status()).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(response.status(), body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      }
+    });
+    server.start();
+    return requests;
+  }
+
+  private static HttpHeaders headers(Map<String, String> values) {
+    Map<String, List<String>> headers = new HashMap<>();
+    values.forEach((name, value) -> headers.put(name, List.of(value)));
+    return HttpHeaders.of(headers, (name, value) -> true);
+  }
+
+  private record StubResponse(int status, Map<String, String> headers) {
+  }
+}
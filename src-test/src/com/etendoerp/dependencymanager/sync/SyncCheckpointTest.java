@@ -0,0 +1,100 @@
+package com.etendoerp.dependencymanager.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SyncCheckpointTest {
+  private static final String SALES = "com.etendoerp.sales";
+  private static final String PURCHASES = "com.etendoerp.purchases";
+  private static final String WAREHOUSE = "com.etendoerp.warehouse";
+  private static final String UPDATED_AT = "2024-05-02T10:00:00Z";
+
+  private final TempCacheDirectory cacheDir = new TempCacheDirectory();
+
+  @BeforeEach
+  void useTempCacheDirectory() throws IOException {
+    cacheDir.create();
+  }
+
+  @AfterEach
+  void removeTempCacheDirectory() throws IOException {
+    cacheDir.delete();
+  }
+
+  @Test
+  void startsFromTheFirstPage() throws IOException {
+    SyncCheckpoint checkpoint = SyncCheckpoint.load();
+
+    assertFalse(checkpoint.isResumed());
+    assertNotNull(checkpoint.getRunId());
+    assertEquals(1, checkpoint.getPage());
+    assertNull(checkpoint.getLastPackage());
+    assertTrue(checkpoint.getPendingPackages().isEmpty());
+  }
+
+  @Test
+  void resumesAnUnfinishedRun() throws IOException {
+    SyncCheckpoint checkpoint = SyncCheckpoint.load();
+    checkpoint.addPending(WAREHOUSE, UPDATED_AT);
+    checkpoint.addPending(SALES, UPDATED_AT);
+    checkpoint.addPending(PURCHASES, UPDATED_AT);
+    checkpoint.removePending(SALES);
+    checkpoint.advance(3, PURCHASES);
+    checkpoint.save();
+
+    SyncCheckpoint resumed = SyncCheckpoint.load();
+
+    assertTrue(resumed.isResumed());
+    assertEquals(checkpoint.getRunId(), resumed.getRunId());
+    assertEquals(3, resumed.getPage());
+    assertEquals(PURCHASES, resumed.getLastPackage());
+    // The pending packages keep the order in which they were crawled
+    assertEquals(List.of(WAREHOUSE, PURCHASES), List.copyOf(resumed.getPendingPackages().keySet()));
+    assertEquals(UPDATED_AT, resumed.getPendingPackages().get(PURCHASES));
+  }
+
+  @Test
+  void startsAgainOnceTheRunCompletes() throws IOException {
+    SyncCheckpoint checkpoint = SyncCheckpoint.load();
+    checkpoint.addPending(SALES, UPDATED_AT);
+    checkpoint.advance(2, SALES);
+    checkpoint.save();
+
+    checkpoint.delete();
+    SyncCheckpoint next = SyncCheckpoint.load();
+
+    assertFalse(next.isResumed());
+    assertNotEquals(checkpoint.getRunId(), next.getRunId());
+    assertEquals(1, next.getPage());
+    assertTrue(next.getPendingPackages().isEmpty());
+  }
+
+  @Test
+  void restartDiscardsTheStoredProgress() throws IOException {
+    SyncCheckpoint checkpoint = SyncCheckpoint.load();
+    checkpoint.addPending(SALES, UPDATED_AT);
+    checkpoint.advance(4, SALES);
+    checkpoint.save();
+
+    SyncCheckpoint resumed = SyncCheckpoint.load();
+    resumed.restart();
+    resumed.save();
+
+    assertNotEquals(checkpoint.getRunId(), resumed.getRunId());
+    assertEquals(1, resumed.getPage());
+    assertNull(resumed.getLastPackage());
+    assertTrue(resumed.getPendingPackages().isEmpty());
+    assertEquals(resumed.getRunId(), SyncCheckpoint.load().getRunId());
+  }
+}
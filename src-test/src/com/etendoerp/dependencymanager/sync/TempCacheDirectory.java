@@ -0,0 +1,46 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * A temporary directory set as the {@value SyncFiles#CACHE_DIR_PROPERTY} while a test runs, so the state
+ * of real synchronizations is neither read nor overwritten.
+ */
+class TempCacheDirectory {
+  private Path dir;
+  private String previousDir;
+
+  /**
+   * Creates the directory and makes it the sync cache directory.
+   */
+  void create() throws IOException {
+    dir = Files.createTempDirectory("etdep-sync-test");
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    previousDir = properties.getProperty(SyncFiles.CACHE_DIR_PROPERTY);
+    properties.setProperty(SyncFiles.CACHE_DIR_PROPERTY, dir.toString());
+  }
+
+  /**
+   * Restores the previous sync cache directory and removes the temporary one.
+   */
+  void delete() throws IOException {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    if (previousDir == null) {
+      properties.remove(SyncFiles.CACHE_DIR_PROPERTY);
+    } else {
+      properties.setProperty(SyncFiles.CACHE_DIR_PROPERTY, previousDir);
+    }
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
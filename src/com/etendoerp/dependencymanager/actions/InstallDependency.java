@@ -3,6 +3,10 @@ package com.etendoerp.dependencymanager.actions;
 import com.etendoerp.dependencymanager.data.Dependency;
 import com.etendoerp.dependencymanager.data.PackageDependency;
 import com.etendoerp.dependencymanager.data.PackageVersion;
+import com.etendoerp.dependencymanager.sync.ListingPage;
+import com.etendoerp.dependencymanager.sync.MirroredPackageSource;
+import com.etendoerp.dependencymanager.sync.PackageRepositorySource;
+import com.etendoerp.dependencymanager.sync.RepositoryPackageVersion;
 import com.etendoerp.dependencymanager.util.DependencyManagerConstants;
 import com.etendoerp.dependencymanager.util.PackageUtil;
 import com.smf.jobs.Action;
@@ -13,36 +17,16 @@ import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.codehaus.jettison.json.JSONObject;
-import org.openbravo.base.session.OBPropertiesProvider;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import com.etendoerp.dependencymanager.data.Package;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-
-import java.util.List;
-import java.util.Properties;
 
 public class InstallDependency extends Action {
   private static final Logger log = LogManager.getLogger();
   private static final String PLATFORM_GROUP = "com.etendoerp.platform";
   private static final String CORE_ARTIFACT = "etendo-core";
-  private static final String GITHUB_VERSIONS_API_URL = "https://deps.labs.etendo.cloud/api/v1/packages/maven/";
-  private static final String GITHUB_API_URI_VERSIONS = "/versions";
-  private static final String AUTHORIZATION_HEADER = "Authorization";
-  public static final String LOCATION_HEADER = "Location";
-  private static final String BASIC_AUTH_TOKEN = "Basic ";
-  private static final HttpClient httpClient = HttpClient.newHttpClient();
-  private static final ObjectMapper objectMapper = new ObjectMapper();
-  public static final String GITHUB_USER = "githubUser";
-  public static final String GITHUB_TOKEN = "githubToken";
+  private static PackageRepositorySource lookupSource;
 
   @Override
   protected ActionResult action(JSONObject parameters, MutableBoolean isStopped) {
@@ -75,35 +59,13 @@ public class InstallDependency extends Action {
         dependency.getArtifact(), CORE_ARTIFACT);
   }
 
-  private static String sendHttpRequest(String url) throws Exception {
-    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
-    String githubUser = properties.getProperty(GITHUB_USER, "");
-    String githubToken = properties.getProperty(GITHUB_TOKEN, "");
-
-    String authToken = BASIC_AUTH_TOKEN + Base64.getEncoder().encodeToString((githubUser + ":" + githubToken).getBytes());
-    HttpRequest request = HttpRequest.newBuilder()
-        .uri(new URI(url))
-        .header(AUTHORIZATION_HEADER, authToken)
-        .version(HttpClient.Version.HTTP_2)
-        .GET()
-        .build();
-    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-    return response.body();
-  }
-
-  private static List<Map<String, Object>> fetchPackageVersions(String packageName) throws Exception {
-    String url = GITHUB_VERSIONS_API_URL + packageName + GITHUB_API_URI_VERSIONS;
-    String responseBody = sendHttpRequest(url);
-    return objectMapper.readValue(responseBody, new TypeReference<>() {});
-  }
-
   public static String fetchLatestVersion(String group, String artifact) {
     try {
       String packageName = group + "." + artifact;
-      List<Map<String, Object>> versions = fetchPackageVersions(packageName);
-      if (!versions.isEmpty()) {
-        Map<String, Object> lastVersion = versions.get(0);
-        return (String) lastVersion.get("name");
+      // Versions are listed newest first, so the first one is the only one needed
+      ListingPage<RepositoryPackageVersion> versionPage = getLookupSource().fetchVersionPage(packageName, 1);
+      if (versionPage != null && !versionPage.items().isEmpty()) {
+        return versionPage.items().get(0).name();
       } else {
         return null;
       }
@@ -113,6 +75,16 @@ public class InstallDependency extends Action {
     }
   }
 
+  /**
+   * @return the source of the version lookups, created on the first one and shared by the next ones
+   */
+  private static synchronized PackageRepositorySource getLookupSource() {
+    if (lookupSource == null) {
+      lookupSource = MirroredPackageSource.forLookups();
+    }
+    return lookupSource;
+  }
+
   public static String determineVersionStatus(String installedVersion, String latestVersion) {
     return StringUtils.equals(installedVersion, latestVersion) ? "U" : "UA";
   }
@@ -1,56 +1,81 @@
 package com.etendoerp.dependencymanager.process;
 
-import com.etendoerp.dependencymanager.data.Package;
-import com.etendoerp.dependencymanager.data.PackageDependency;
-import com.etendoerp.dependencymanager.data.PackageVersion;
-import com.etendoerp.dependencymanager.util.DependencyManagerConstants;
+import com.etendoerp.dependencymanager.sync.CircuitOpenException;
+import com.etendoerp.dependencymanager.sync.ConcurrentFetcher;
+import com.etendoerp.dependencymanager.sync.HttpStatusException;
+import com.etendoerp.dependencymanager.sync.HttpValidatorCache;
+import com.etendoerp.dependencymanager.sync.ListingPage;
+import com.etendoerp.dependencymanager.sync.MirrorStats;
+import com.etendoerp.dependencymanager.sync.MirroredPackageSource;
+import com.etendoerp.dependencymanager.sync.PackageRepositorySource;
+import com.etendoerp.dependencymanager.sync.PackageSyncIndex;
+import com.etendoerp.dependencymanager.sync.PackageSyncState;
+import com.etendoerp.dependencymanager.sync.PomCache;
+import com.etendoerp.dependencymanager.sync.PomFailureCache;
+import com.etendoerp.dependencymanager.sync.PomReader;
+import com.etendoerp.dependencymanager.sync.RepositoryPackage;
+import com.etendoerp.dependencymanager.sync.RepositoryPackageVersion;
+import com.etendoerp.dependencymanager.sync.SyncCheckpoint;
+import com.etendoerp.dependencymanager.sync.SyncMetrics;
+import com.etendoerp.dependencymanager.sync.SyncPipeline;
 import com.etendoerp.dependencymanager.util.PackageUtil;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.dom4j.Element;
-import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.base.session.OBPropertiesProvider;
-import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.core.SessionHandler;
 import org.openbravo.dal.service.OBDal;
-import org.openbravo.dal.xml.XMLUtil;
-import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.scheduling.ProcessLogger;
 import org.openbravo.service.db.DalBaseProcess;
 
-import java.io.ByteArrayInputStream;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
 
 /**
- * This process updates the packages and package versions from the GitHub API.
+ * This process updates the packages and package versions from a {@link PackageRepositorySource}, the GitHub packages API by default.
  */
 public class GetPackagesFromRepositories extends DalBaseProcess {
   private static final Logger log = LogManager.getLogger();
-  private static final String AUTHORIZATION_HEADER = "Authorization";
-  public static final String LOCATION_HEADER = "Location";
-  private static final String BASIC_AUTH_TOKEN = "Basic ";
-  private static final String GITHUB_API_URL = "https://api.github.com/orgs/etendosoftware/packages?package_type=maven&per_page=100&page=";
-  private static final String GITHUB_VERSIONS_API_URL = "https://api.github.com/orgs/etendosoftware/packages/maven/";
-  private static final String GITHUB_POM_URL = "https://maven.pkg.github.com/etendosoftware/etendo_core/";
-  private static final HttpClient httpClient = HttpClient.newHttpClient();
-  private static final ObjectMapper objectMapper = new ObjectMapper();
-  public static final String GITHUB_USER = "githubUser";
-  public static final String GITHUB_TOKEN = "githubToken";
-  public static final String NAME = "name";
-  public static final String GITHUB_API_URI_VERSIONS = "/versions";
-  private String _auth;
+  public static final String CHUNK_SIZE_PROPERTY = "etdep.sync.chunk.size";
+  public static final String METRICS_NAME = "GetPackagesFromRepositories";
+  private static final int DEFAULT_CHUNK_SIZE = 100;
+  private static final int HTTP_NOT_FOUND = 404;
+  private static final int HTTP_GONE = 410;
+  private ConcurrentFetcher fetcher;
+  private PackageRepositorySource source;
+  private ProcessLogger processLogger;
+  private HttpValidatorCache validatorCache;
+  private PackageSyncState syncState;
+  private PackageSyncIndex index;
+  private SyncCheckpoint checkpoint;
+  private PomCache pomCache;
+  private PomFailureCache pomFailures;
+  private SyncMetrics metrics;
+  private int skippedPomRequests;
+  private int versionsWithoutDependencies;
+  private final AtomicInteger pomCalls = new AtomicInteger();
+  private final boolean fullResync;
+  private int chunkSize;
   private static final List<String> EXCLUDED_PACKAGE_PREFIXES = Arrays.asList("com.etendorx");
   private static final List<String> EXCLUDED_PACKAGES = Arrays.asList(
     "com.etendoerp.platform.etendo-core", "com.etendoerp.gradleplugin",
@@ -58,6 +83,24 @@ public class GetPackagesFromRepositories extends DalBaseProcess {
   private static final List<String> EXCLUDED_REPOSITORIES = Arrays.asList(
     "com.etendoerp.public.jars");
 
+  /**
+   * Creates the process in incremental mode: only the packages that changed since the last
+   * successful sync are processed.
+   */
+  public GetPackagesFromRepositories() {
+    this(false);
+  }
+
+  /**
+   * Creates the process.
+   *
+   * @param fullResync If true, the incremental sync state and the cached HTTP validators are discarded
+   *     and every package is synced again.
+   */
+  public GetPackagesFromRepositories(boolean fullResync) {
+    this.fullResync = fullResync;
+  }
+
   /**
    * This method is called when the process is executed.
    *
@@ -67,446 +110,728 @@ public class GetPackagesFromRepositories extends DalBaseProcess {
   @Override
   protected void doExecute(ProcessBundle bundle) throws Exception {
     Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
-    String githubUser = properties.getProperty(GITHUB_USER, "");
-    String githubToken = properties.getProperty(GITHUB_TOKEN, "");
-    // Base64 Basic Auth token
-    this._auth = BASIC_AUTH_TOKEN + Base64.getEncoder()
-      .encodeToString((githubUser + ":" + githubToken).getBytes());
-    try {
-      processPackagesAndVersions();
-      processDependencies();
+    this.processLogger = bundle != null ? bundle.getLogger() : null;
+    this.chunkSize = Math.max(1, NumberUtils.toInt(properties.getProperty(CHUNK_SIZE_PROPERTY), DEFAULT_CHUNK_SIZE));
+    this.metrics = SyncMetrics.forSync(METRICS_NAME);
+    metrics.startRun();
+    try (ConcurrentFetcher concurrentFetcher = ConcurrentFetcher.fromProperties()) {
+      this.fetcher = concurrentFetcher;
+      metrics.time("load", () -> {
+        this.validatorCache = HttpValidatorCache.load();
+        this.source = PackageRepositorySource.fromProperties(validatorCache);
+        this.syncState = PackageSyncState.load();
+        this.checkpoint = SyncCheckpoint.load();
+        this.pomCache = PomCache.open();
+        this.pomFailures = PomFailureCache.load();
+        this.skippedPomRequests = 0;
+        this.versionsWithoutDependencies = 0;
+        pomCalls.set(0);
+        if (fullResync) {
+          logToProcess("Full resync requested, every package will be synchronized");
+          validatorCache.clear();
+          syncState.clear();
+          checkpoint.restart();
+          pomFailures.clear();
+        }
+        this.index = PackageSyncIndex.load();
+        if (!fullResync && !index.hasPackages()) {
+          // The sync state and the validators outlive the database, an empty or restored one must be synced
+          // again from scratch instead of being answered with a 304
+          logToProcess("No packages stored, every package will be synchronized");
+          validatorCache.clear();
+          syncState.clear();
+        }
+      });
+      syncPackages();
+      metrics.time("save", () -> {
+        validatorCache.save();
+        syncState.save();
+        pomFailures.save();
+        checkpoint.delete();
+      });
     } catch (Exception e) {
       log.error("Failed to process packages", e);
-      bundle.getLogger().logln("Failed to process packages "+ e.getMessage());
+      logToProcess("Failed to process packages " + e.getMessage());
+    } finally {
+      logToProcess("Sync metrics " + metrics.finishRun());
     }
   }
 
   /**
-   * This method processes package dependencies.
-   * It fetches packages from the GitHub API in pages, with each page containing multiple packages.
-   * For each package, it attempts to process the package for its dependencies.
+   * Synchronizes packages, versions and dependencies in a single pass over the repository source.
+   * The package list is paged once following the next page location given by each page, prefetching the next page
+   * while the current one is processed. The versions of each page are fetched by the workers of a
+   * {@link SyncPipeline} and upserted by the current thread, the only one that uses the OBDal session, as soon
+   * as they arrive, keeping the synced versions in memory. Once the whole catalog has been
+   * crawled, the POM files of the versions without dependencies are fetched and their dependencies
+   * are upserted, so dependencies can be resolved against packages of any page.
+   * Package pages and version lists are requested conditionally: the ones answered with a 304 have not
+   * changed since the last run and are skipped without parsing nor database work. Packages whose
+   * {@code updated_at} has not changed since their last successful sync are skipped as well.
+   * Every upsert is resolved against the in-memory {@link PackageSyncIndex}, and new rows are written in batches.
+   * Work is committed in chunks of packages ({@value #CHUNK_SIZE_PROPERTY} property) and the session is cleared, so memory does
+   * not grow with the catalog and a failure only loses the current chunk. A package is only marked as synced
+   * once its dependencies have been committed.
+   * A {@link SyncCheckpoint} is saved after every committed chunk. If the previous run did not complete,
+   * the crawl continues from its last committed package, and the dependencies it left pending are processed.
+   * The crawl, dependency and retry phases are timed in the {@link SyncMetrics} of the run.
    * If any exception occurs during the processing of a package, it is caught and logged, and the method continues with the next package.
-   * After all packages in a page have been processed, the method checks if there are more packages to fetch.
-   * If there are no more packages to fetch (i.e., the fetched list of packages is empty), it breaks the loop.
-   * After all packages have been processed, it flushes the session to synchronize with the database.
-   * @throws Exception If an error occurs during processing.
+   *
+   * @throws OBException If the list of packages cannot be fetched.
    */
-  private void processDependencies() throws Exception {
-    for (int page = 1; page < 10; page++) {
-      List<Map<String, Object>> packages = fetchPackages(page);
-      if (packages.isEmpty()) {
-        break;
+  private void syncPackages() {
+    List<SyncedPackage> syncedPackages = new ArrayList<>();
+    Set<String> syncedPackageNames = new HashSet<>();
+    int startPage = checkpoint.getPage();
+    String resumeAfter = checkpoint.getLastPackage();
+    if (checkpoint.isResumed()) {
+      logToProcess(String.format("Resuming sync run %s from page %d, %d packages pending dependencies",
+        checkpoint.getRunId(), startPage, checkpoint.getPendingPackages().size()));
+      for (Map.Entry<String, String> pending : checkpoint.getPendingPackages().entrySet()) {
+        SyncedPackage syncedPackage = resumePackage(pending.getKey(), pending.getValue());
+        if (syncedPackage != null) {
+          syncedPackages.add(syncedPackage);
+          syncedPackageNames.add(syncedPackage.name);
+        }
       }
-      for (Map<String, Object> pkg : packages) {
-        try {
-          processPackageDependency(pkg);
-        } catch (Exception e) {
-          log.error("Failed to process package dependency - ERROR: {}", e.getMessage());
+    }
+    int packagePageCalls = 0;
+    int versionCalls = 0;
+    int notModifiedCalls = 0;
+    int unchangedPackages = 0;
+    int crawledPackages = 0;
+    int listedPackages = 0;
+    List<String> processedPageUrls = new ArrayList<>();
+    SyncMetrics.Phase crawlPhase = metrics.startPhase("crawl");
+    try {
+      int page = startPage;
+      String pageUrl = source.getPackagePageLocation(page);
+      CompletableFuture<ListingPage<RepositoryPackage>> pageFetch = fetcher.fetchAsync(pageUrl, this::fetchPackages);
+      for (; pageFetch != null; page++) {
+        ListingPage<RepositoryPackage> packagePage = joinPage(pageFetch);
+        packagePageCalls++;
+        metrics.increment(SyncMetrics.Counter.PAGES);
+        // A page answered with a 304 has no Link header, but it cannot be the last one: its validators are never kept
+        String nextPageUrl = packagePage != null ? packagePage.nextLocation() : source.getPackagePageLocation(page + 1);
+        pageFetch = nextPageUrl != null ? fetcher.fetchAsync(nextPageUrl, this::fetchPackages) : null;
+        String currentPageUrl = pageUrl;
+        pageUrl = nextPageUrl;
+        if (packagePage == null) {
+          log.debug("Package page {} not modified since the last sync", page);
+          notModifiedCalls++;
+          metrics.increment(SyncMetrics.Counter.NOT_MODIFIED);
+          continue;
+        }
+        if (nextPageUrl == null) {
+          // The last page is always checked again, new packages would be added to it or after it
+          validatorCache.discard(currentPageUrl);
+        }
+        List<RepositoryPackage> packages = packagePage.items();
+        if (page == startPage && resumeAfter != null) {
+          packages = skipCommittedPackages(packages, resumeAfter);
         }
+        Map<String, String> packagesToSync = getPackagesToSync(packages);
+        listedPackages += (int) packages.stream().filter(pkg -> !isPackageExcluded(pkg)).count();
+        unchangedPackages += packages.size() - packagesToSync.size();
+        packagesToSync.keySet().removeAll(syncedPackageNames);
+        SyncPipeline<String, List<RepositoryPackageVersion>> pipeline = SyncPipeline.fromProperties(fetcher);
+        for (String packageName : packagesToSync.keySet()) {
+          pipeline.submit(packageName, source::fetchVersions);
+        }
+        // Versions arrive in completion order, the checkpoint only advances over the packages of the page
+        // whose preceding packages have all been committed
+        List<String> pageOrder = new ArrayList<>(packagesToSync.keySet());
+        Set<String> handledPackages = new HashSet<>();
+        int committedPrefix = 0;
+        boolean pageProcessed = true;
+        for (List<SyncPipeline.Result<String, List<RepositoryPackageVersion>>> results = pipeline.takeReady();
+          !results.isEmpty(); results = pipeline.takeReady()) {
+          for (SyncPipeline.Result<String, List<RepositoryPackageVersion>> result : results) {
+            String packageName = result.key();
+            handledPackages.add(packageName);
+            if (result.isFailed()) {
+              pageProcessed = false;
+              log.error("Failed to fetch versions of package {} - ERROR: {}", packageName, result.error().getMessage());
+            } else if (result.value() == null) {
+              versionCalls++;
+              log.debug("Versions of package {} not modified since the last sync", packageName);
+              // Nothing changed for the new updated_at, so the package is not requested again on the next run
+              syncState.markSynced(packageName, packagesToSync.get(packageName));
+              notModifiedCalls++;
+              metrics.increment(SyncMetrics.Counter.NOT_MODIFIED);
+            } else {
+              versionCalls++;
+              try {
+                String updatedAt = packagesToSync.get(packageName);
+                syncedPackages.add(processPackage(packageName, result.value(), updatedAt));
+                syncedPackageNames.add(packageName);
+                checkpoint.addPending(packageName, updatedAt);
+                metrics.increment(SyncMetrics.Counter.PACKAGES);
+                metrics.add(SyncMetrics.Counter.VERSIONS, result.value().size());
+              } catch (Exception e) {
+                pageProcessed = false;
+                log.error("Failed to process package dependencies", e);
+              }
+            }
+            if (++crawledPackages % chunkSize == 0) {
+              commitChunk();
+              int previousPrefix = committedPrefix;
+              while (committedPrefix < pageOrder.size() && handledPackages.contains(pageOrder.get(committedPrefix))) {
+                committedPrefix++;
+              }
+              if (committedPrefix > previousPrefix) {
+                checkpoint.advance(page, pageOrder.get(committedPrefix - 1));
+              }
+              checkpoint.save();
+            }
+          }
+        }
+        if (pageProcessed) {
+          processedPageUrls.add(currentPageUrl);
+        }
+        commitChunk();
+        checkpoint.advance(page + 1, null);
+        checkpoint.save();
+      }
+    } finally {
+      crawlPhase.close();
+    }
+
+    metrics.time("dependencies", () -> processDependencies(syncedPackages));
+    metrics.time("retries", this::retryFailedPoms);
+    for (String processedPageUrl : processedPageUrls) {
+      validatorCache.confirm(processedPageUrl);
+    }
+
+    // The baseline pages the package list, fetches the versions of every listed package that is not excluded
+    // and the POM of every version without dependencies
+    int baselineCalls = packagePageCalls + listedPackages + versionsWithoutDependencies;
+    int actualCalls = packagePageCalls + versionCalls + pomCalls.get();
+    logToProcess(String.format(
+      "Synchronized %d packages (%d excluded or unchanged): %d calls against a baseline of %d (%d package list and version calls, %d POM calls), %d calls saved, %d not modified",
+      syncedPackages.size(), unchangedPackages, actualCalls, baselineCalls, packagePageCalls + versionCalls,
+      pomCalls.get(), baselineCalls - actualCalls, notModifiedCalls));
+    logToProcess(String.format("%d rows inserted, %d rows updated", index.getInsertedRows(),
+      index.getUpdatedRows()));
+    metrics.add(SyncMetrics.Counter.ROWS_INSERTED, index.getInsertedRows());
+    metrics.add(SyncMetrics.Counter.ROWS_UPDATED, index.getUpdatedRows());
+    logToProcess(String.format("%d POMs read from the local cache, %d downloaded and cached", pomCache.getHits(),
+      pomCache.getMisses()));
+    logToProcess(String.format("%d POMs skipped until their next attempt after a previous failure",
+      skippedPomRequests));
+    if (source instanceof MirroredPackageSource) {
+      for (MirrorStats mirrorStats : ((MirroredPackageSource) source).getMirrorStats()) {
+        logToProcess("Mirror " + mirrorStats);
       }
     }
-    OBDal.getInstance().flush();
   }
 
   /**
-   * This method processes packages and their versions.
-   * It fetches packages from the GitHub API in pages, with each page containing multiple packages.
-   * For each package, it attempts to process the package.
+   * This method processes package dependencies of the packages synced in this run.
+   * The POM files of the versions without dependencies are fetched by the workers of a {@link SyncPipeline},
+   * while the current thread applies the fetched POMs to the database as they arrive, committing every
+   * chunk of POMs. A package is marked as synced once all of its POMs have been applied and committed.
    * If any exception occurs during the processing of a package, it is caught and logged, and the method continues with the next package.
-   * After all packages in a page have been processed, the method checks if there are more packages to fetch.
-   * If there are no more packages to fetch (i.e., the fetched list of packages is empty), it breaks the loop.
-   * After all packages have been processed, it flushes the session to synchronize with the database.
-   * @throws Exception If an error occurs during processing.
+   *
+   * @param syncedPackages The packages and versions synced in this run.
    */
-  private void processPackagesAndVersions() throws Exception {
-    for (int page = 1; page < 10; page++) {
-      List<Map<String, Object>> packages = fetchPackages(page);
-      if (packages.isEmpty()) {
-        break;
+  private void processDependencies(List<SyncedPackage> syncedPackages) {
+    SyncPipeline<PomRequest, PomReader.Pom> pipeline = SyncPipeline.fromProperties(fetcher);
+    Map<PomRequest, SyncedPackage> pomOwners = new HashMap<>();
+    Map<SyncedPackage, Integer> pendingPoms = new HashMap<>();
+    List<SyncedPackage> completedPackages = new ArrayList<>();
+    for (SyncedPackage syncedPackage : syncedPackages) {
+      List<PomRequest> pomRequests = new ArrayList<>();
+      try {
+        pomRequests = processPackageDependency(syncedPackage);
+      } catch (Exception e) {
+        log.error("Failed to process package dependency - ERROR: {}", e.getMessage());
+      }
+      if (pomRequests.isEmpty()) {
+        completedPackages.add(syncedPackage);
+        continue;
       }
-      for (Map<String, Object> pkg : packages) {
-        try {
-          processPackage(pkg);
-        } catch (Exception e) {
-          log.error("Failed to process package dependencies", e);
+      pendingPoms.put(syncedPackage, pomRequests.size());
+      for (PomRequest pomRequest : pomRequests) {
+        pomOwners.put(pomRequest, syncedPackage);
+        pipeline.submit(pomRequest, this::fetchPom);
+      }
+    }
+    int writtenPoms = 0;
+    for (List<SyncPipeline.Result<PomRequest, PomReader.Pom>> results = pipeline.takeReady();
+      !results.isEmpty(); results = pipeline.takeReady()) {
+      for (SyncPipeline.Result<PomRequest, PomReader.Pom> result : results) {
+        processFetchedPom(result.key(), result.value());
+        SyncedPackage owner = pomOwners.remove(result.key());
+        if (pendingPoms.merge(owner, -1, Integer::sum) == 0) {
+          pendingPoms.remove(owner);
+          completedPackages.add(owner);
+        }
+        if (++writtenPoms % chunkSize == 0) {
+          commitDependencies(completedPackages);
         }
       }
     }
-    OBDal.getInstance().flush();
+    commitDependencies(completedPackages);
   }
 
   /**
-   * Fetches the packages from the GitHub API.
+   * Commits the dependencies written so far and marks the packages whose POMs have all been applied as synced.
    *
-   * @param page
-   * @return
-   * @throws Exception
+   * @param completedPackages The packages whose POMs have all been applied, the list is cleared.
    */
-  private List<Map<String, Object>> fetchPackages(int page) throws OBException {
-    try {
-      String url = GITHUB_API_URL + page;
-      String responseBody = sendHttpRequest(url);
-      return objectMapper.readValue(responseBody, new TypeReference<>() {
-      });
-    } catch (Exception e) {
-      throw new OBException("Failed to fetch packages", e);
+  private void commitDependencies(List<SyncedPackage> completedPackages) {
+    commitChunk();
+    for (SyncedPackage syncedPackage : completedPackages) {
+      for (String versionsLocation : source.getVersionsLocations(syncedPackage.name)) {
+        validatorCache.confirm(versionsLocation);
+      }
+      syncState.markSynced(syncedPackage.name, syncedPackage.updatedAt);
+      checkpoint.removePending(syncedPackage.name);
     }
+    completedPackages.clear();
+    validatorCache.save();
+    syncState.save();
+    pomFailures.save();
+    checkpoint.save();
   }
 
   /**
-   * Processes a package from the GitHub API.
-   * @param pkg
-   * @throws Exception
+   * Requests again the POMs that failed in previous syncs and whose next attempt is due.
+   * This covers the versions of packages that have not changed since their last sync,
+   * which are not visited by the crawl.
+   * Failures of versions that no longer exist or already have dependencies are forgotten.
    */
-  private void processPackage(Map<String, Object> pkg) throws Exception {
-    String name = (String) pkg.get(NAME);
-    log.debug("Processing package: {}", name);
-
-    if (!isPackageExcluded(pkg)) {
-      String[] parts = name.split("\\.");
-      String group = parts[0] + "." + parts[1];
-      String artifact = String.join(".", Arrays.copyOfRange(parts, 2, parts.length));
-
-      Package res = findOrCreatePackage(group, artifact);
-
-      List<Map<String, Object>> versions = fetchPackageVersions(name);
-      for (Map<String, Object> version : versions) {
-        processPackageVersion(version, res);
+  private void retryFailedPoms() {
+    SyncPipeline<PomRequest, PomReader.Pom> pipeline = SyncPipeline.fromProperties(fetcher);
+    for (Map.Entry<String, PomFailureCache.Failure> entry : pomFailures.getDueFailures().entrySet()) {
+      PomFailureCache.Failure failure = entry.getValue();
+      String packageId = index.findPackage(failure.group, failure.artifact);
+      String pkgVersionId = packageId != null ? index.findPackageVersion(packageId, failure.version) : null;
+      if (pkgVersionId == null || index.hasDependencies(pkgVersionId)) {
+        pomFailures.forget(entry.getKey());
+      } else {
+        versionsWithoutDependencies++;
+        pipeline.submit(new PomRequest(pkgVersionId, failure.group, failure.artifact, failure.version,
+          entry.getKey()), this::fetchPom);
       }
-    } else {
-      log.debug("Skipping excluded package: {}", name);
     }
+    if (pipeline.getPending() > 0) {
+      logToProcess(String.format("Retrying %d POMs that failed in previous syncs", pipeline.getPending()));
+    }
+    int writtenPoms = 0;
+    for (List<SyncPipeline.Result<PomRequest, PomReader.Pom>> results = pipeline.takeReady();
+      !results.isEmpty(); results = pipeline.takeReady()) {
+      for (SyncPipeline.Result<PomRequest, PomReader.Pom> result : results) {
+        processFetchedPom(result.key(), result.value());
+        if (++writtenPoms % chunkSize == 0) {
+          commitChunk();
+          pomFailures.save();
+        }
+      }
+    }
+    commitChunk();
+    pomFailures.save();
   }
 
   /**
-   * Processes a package from the GitHub API for its dependencies.
-   * If the package is not excluded, it fetches the package versions and processes each version for dependencies.
-   * If the package is excluded, it skips the processing and logs a debug message.
+   * Removes from the packages of the resumed page the ones committed by the previous run,
+   * that is, every package up to the last one recorded in the checkpoint.
+   * If that package is no longer on the page, the whole page is processed again.
    *
-   * @param pkg The package map object from the GitHub API.
-   * @throws Exception If an error occurs during processing.
+   * @param packages The packages of the page returned by the repository source.
+   * @param lastPackage The last package committed by the previous run.
+   * @return The packages of the page after the last committed one.
    */
-  private void processPackageDependency(Map<String, Object> pkg) throws Exception {
-    String name = (String) pkg.get(NAME);
-    log.debug("Processing package: {}", name);
+  private List<RepositoryPackage> skipCommittedPackages(List<RepositoryPackage> packages, String lastPackage) {
+    for (int i = 0; i < packages.size(); i++) {
+      if (StringUtils.equals(lastPackage, packages.get(i).name())) {
+        return packages.subList(i + 1, packages.size());
+      }
+    }
+    return packages;
+  }
 
-    if (!isPackageExcluded(pkg)) {
-      String[] parts = name.split("\\.");
-      String group = parts[0] + "." + parts[1];
-      String artifact = String.join(".", Arrays.copyOfRange(parts, 2, parts.length));
+  /**
+   * Rebuilds a package crawled by a previous run whose dependencies were left pending,
+   * from the versions already stored in the database.
+   *
+   * @param name The name of the package.
+   * @param updatedAt The {@code updated_at} value of the package.
+   * @return The synced package, or null if it is not stored in the database.
+   */
+  private SyncedPackage resumePackage(String name, String updatedAt) {
+    String[] parts = name.split("\\.");
+    String group = parts[0] + "." + parts[1];
+    String artifact = String.join(".", Arrays.copyOfRange(parts, 2, parts.length));
+    String packageId = index.findPackage(group, artifact);
+    if (packageId == null) {
+      log.warn("Package {} pending in the sync checkpoint is not stored, it will be synced again", name);
+      return null;
+    }
+    return new SyncedPackage(name, updatedAt, group, artifact,
+      new LinkedHashMap<>(index.findPackageVersions(packageId)));
+  }
 
-      Package res = findOrCreatePackage(group, artifact);
+  /**
+   * Writes the pending rows, commits the transaction and clears the session,
+   * so the work done so far survives a later failure and the session does not keep growing.
+   */
+  private void commitChunk() {
+    index.flush();
+    OBDal.getInstance().flush();
+    SessionHandler.getInstance().commitAndStart();
+    OBDal.getInstance().getSession().clear();
+  }
 
-      List<Map<String, Object>> versions = fetchPackageVersions(name);
-      for (Map<String, Object> version : versions) {
-        processPackageDependencyVersion(version, res, group, artifact);
+  /**
+   * Returns the packages of a page that must be synced: the ones that are not excluded and have
+   * changed since their last successful sync or are not stored in the database.
+   *
+   * @param packages The packages returned by the repository source.
+   * @return The {@code updated_at} value of each package to sync, keyed by package name, in the order of the page.
+   */
+  private Map<String, String> getPackagesToSync(List<RepositoryPackage> packages) {
+    Map<String, String> packagesToSync = new LinkedHashMap<>();
+    for (RepositoryPackage pkg : packages) {
+      String name = pkg.name();
+      String updatedAt = pkg.updatedAt();
+      if (isPackageExcluded(pkg)) {
+        log.debug("Skipping excluded package: {}", name);
+      } else if (!syncState.hasChanged(name, updatedAt) && isPackageStored(name)) {
+        log.debug("Skipping package not updated since the last sync: {}", name);
+      } else {
+        packagesToSync.put(name, updatedAt);
       }
-    } else {
-      log.debug("Skipping excluded package: {}", name);
     }
+    return packagesToSync;
   }
 
   /**
-   * Checks if a given package name or group should be excluded based on its name or prefix.
-   * Excluded packages are not processed or shown in the module management window (core, plugins, or rx packages).
+   * Checks if a package is stored in the database, as its high-water mark may be left over from a
+   * database that has since been restored.
    *
-   * @param pkg The package to check for exclusion.
-   * @return true if the package is to be excluded, false otherwise.
+   * @param name The name of the package.
+   * @return true if the package is in the {@link PackageSyncIndex}.
    */
-  private boolean isPackageExcluded(Map<String, Object> pkg) {
-    String packageName = (String) pkg.get(NAME);
-    for (String prefix : EXCLUDED_PACKAGE_PREFIXES) {
-      if (StringUtils.startsWith(packageName, prefix)) {
-        return true;
-      }
+  private boolean isPackageStored(String name) {
+    String[] parts = name.split("\\.");
+    String group = parts[0] + "." + parts[1];
+    String artifact = String.join(".", Arrays.copyOfRange(parts, 2, parts.length));
+    return index.findPackage(group, artifact) != null;
+  }
+
+  /**
+   * Fetches a page of packages from the repository source.
+   *
+   * @param location The location of the page.
+   * @return The packages of the page and the location of the next one, or null if the page has not been modified since the last sync.
+   * @throws OBException If the page cannot be fetched.
+   */
+  private ListingPage<RepositoryPackage> fetchPackages(String location) throws OBException {
+    try {
+      return source.fetchPackages(location);
+    } catch (Exception e) {
+      throw new OBException("Failed to fetch packages", e);
     }
-    Map<String, Object> repository = (Map<String, Object>) pkg.get("repository");
-    return EXCLUDED_PACKAGES.contains(packageName) || EXCLUDED_REPOSITORIES.contains(repository.get(NAME));
   }
 
   /**
-   * Finds or creates a package.
-   * @param group
-   * @param artifact
-   * @return
+   * Waits for a page of packages fetched in the background.
+   *
+   * @param pageFetch The fetch of the page.
+   * @return The page, or null if it has not been modified since the last sync.
+   * @throws OBException If the page cannot be fetched.
    */
-  private Package findOrCreatePackage(String group, String artifact) {
-    OBCriteria<Package> obCriteria = OBDal.getInstance().createCriteria(Package.class);
-    obCriteria.add(Restrictions.eq(DependencyManagerConstants.GROUP, group));
-    obCriteria.add(Restrictions.eq(DependencyManagerConstants.ARTIFACT, artifact));
-    obCriteria.setMaxResults(1);
-
-    Package pkg = (Package) obCriteria.uniqueResult();
-
-    if (pkg == null) {
-      pkg = new Package();
-      pkg.setGroup(group);
-      pkg.setArtifact(artifact);
-      OBDal.getInstance().save(pkg);
-      OBDal.getInstance().flush();
+  private ListingPage<RepositoryPackage> joinPage(CompletableFuture<ListingPage<RepositoryPackage>> pageFetch) {
+    try {
+      return pageFetch.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof OBException) {
+        throw (OBException) e.getCause();
+      }
+      throw new OBException("Failed to fetch packages", e.getCause());
     }
-    return pkg;
   }
 
   /**
-   * Fetches the package versions from the GitHub API.
-   * @param packageName
-   * @return
-   * @throws Exception
+   * Processes a package from the repository source, creating the package and its versions if needed.
+   *
+   * @param name The name of the package.
+   * @param versions The versions of the package fetched from the repository source.
+   * @param updatedAt The {@code updated_at} value of the package.
+   * @return The synced package with its versions, used later to process the dependencies.
    */
-  private List<Map<String, Object>> fetchPackageVersions(String packageName) throws Exception {
-    String url = GITHUB_VERSIONS_API_URL + packageName + GITHUB_API_URI_VERSIONS;
-    String responseBody = sendHttpRequest(url);
-    return objectMapper.readValue(responseBody, new TypeReference<>() {});
+  private SyncedPackage processPackage(String name, List<RepositoryPackageVersion> versions, String updatedAt) {
+    log.debug("Processing package: {}", name);
+    String[] parts = name.split("\\.");
+    String group = parts[0] + "." + parts[1];
+    String artifact = String.join(".", Arrays.copyOfRange(parts, 2, parts.length));
+
+    String packageId = index.findOrCreatePackage(group, artifact);
+    Map<String, String> pkgVersionIds = new LinkedHashMap<>();
+    for (RepositoryPackageVersion version : versions) {
+      String versionName = version.name();
+      pkgVersionIds.put(versionName, index.findOrCreatePackageVersion(packageId, versionName));
+    }
+    return new SyncedPackage(name, updatedAt, group, artifact, pkgVersionIds);
   }
 
   /**
-   * Processes a package version from the GitHub API.
-   * @param version
-   * @param pkg
+   * Processes a synced package for its dependencies.
+   * Each version of the package is checked for dependencies, and the POM files of the versions
+   * without them are returned so they can be fetched concurrently.
+   *
+   * @param syncedPackage The package synced in this run.
+   * @return The POM files that need to be fetched for this package.
    */
-  private void processPackageVersion(Map<String, Object> version, Package pkg) {
-    String versionName = (String) version.get(NAME);
-    PackageVersion pkgVersion = findOrCreatePackageVersion(pkg, versionName);
+  private List<PomRequest> processPackageDependency(SyncedPackage syncedPackage) {
+    List<PomRequest> pomRequests = new ArrayList<>();
+    for (Map.Entry<String, String> version : syncedPackage.versionIds.entrySet()) {
+      PomRequest pomRequest = processPackageDependencyVersion(version.getValue(), version.getKey(),
+        syncedPackage.group, syncedPackage.artifact);
+      if (pomRequest != null) {
+        pomRequests.add(pomRequest);
+      }
+    }
+    return pomRequests;
+  }
 
-    OBDal.getInstance().save(pkgVersion);
+  /**
+   * Checks if a given package name or group should be excluded based on its name or prefix.
+   * Excluded packages are not processed or shown in the module management window (core, plugins, or rx packages).
+   *
+   * @param pkg The package to check for exclusion.
+   * @return true if the package is to be excluded, false otherwise.
+   */
+  private boolean isPackageExcluded(RepositoryPackage pkg) {
+    String packageName = pkg.name();
+    for (String prefix : EXCLUDED_PACKAGE_PREFIXES) {
+      if (StringUtils.startsWith(packageName, prefix)) {
+        return true;
+      }
+    }
+    return EXCLUDED_PACKAGES.contains(packageName) || EXCLUDED_REPOSITORIES.contains(pkg.repositoryName());
   }
 
   /**
-   * Processes a package version from the GitHub API and checks for dependencies.
-   * If no dependencies are found for the package version, it fetches the POM XML and processes it.
+   * Checks a synced package version for dependencies.
+   * If no dependencies are found for the package version, the POM XML that must be fetched is returned.
    *
-   * @param version The version map object from the GitHub API.
-   * @param pkg The package object to which the version belongs.
+   * @param pkgVersionId The id of the package version synced in this run.
+   * @param versionName The version.
    * @param group The group of the package.
    * @param artifact The artifact of the package.
+   * @return The POM to fetch, or null if the version already has dependencies or its POM failed recently.
    */
-  private void processPackageDependencyVersion(Map<String, Object> version, Package pkg, String group, String artifact) {
-    String versionName = (String) version.get(NAME);
-    PackageVersion pkgVersion = findOrCreatePackageVersion(pkg, versionName);
-
-    if (OBDal.getInstance()
-      .createQuery(PackageDependency.class, "e where e.packageVersion.id = :packageVersionId")
-      .setNamedParameter("packageVersionId", pkgVersion.getId())
-      .count() == 0) {
-
-      String pomUrl = buildPomUrl(group, artifact, versionName);
-      log.debug("Fetching POM XML from {}", pomUrl);
-      try {
-        String pomXml = fetchPomXml(pomUrl);
-        if (pomXml != null) {
-          processPomXml(pomXml, pkgVersion);
-        } else {
-          log.error("No POM XML found or failed to fetch POM XML for URL: {}", pomUrl);
-        }
-      } catch (Exception e) {
-        log.error("Error fetching or processing POM XML for URL: {}", pomUrl, e);
+  private PomRequest processPackageDependencyVersion(String pkgVersionId, String versionName, String group,
+    String artifact) {
+    if (!index.hasDependencies(pkgVersionId)) {
+      versionsWithoutDependencies++;
+      String pomUrl = source.getPomLocation(group, artifact, versionName);
+      if (!pomFailures.isDue(pomUrl)) {
+        log.debug("Skipping POM XML that failed recently: {}", pomUrl);
+        skippedPomRequests++;
+        return null;
       }
+      log.debug("Fetching POM XML from {}", pomUrl);
+      return new PomRequest(pkgVersionId, group, artifact, versionName, pomUrl);
     }
+    return null;
   }
 
   /**
-   * Finds or creates a package version.
-   * @param pkg
-   * @param version
-   * @return
+   * Processes a POM fetched by the concurrent fetcher.
+   *
+   * @param request The request the POM was fetched for.
+   * @param pom The fetched POM, or null if it could not be fetched.
    */
-  private PackageVersion findOrCreatePackageVersion(Package pkg, String version) {
-    PackageVersion pkgVersion = OBDal.getInstance()
-      .createQuery(PackageVersion.class, "e where e.package.id = :packageId and e.version = :version")
-      .setNamedParameter("packageId", pkg.getId())
-      .setNamedParameter(DependencyManagerConstants.VERSION, version)
-      .uniqueResult();
-
-    if (pkgVersion == null) {
-      pkgVersion = new PackageVersion();
-      pkgVersion.setPackage(pkg);
-      pkgVersion.setVersion(version);
-
-      OBDal.getInstance().save(pkgVersion);
+  private void processFetchedPom(PomRequest request, PomReader.Pom pom) {
+    if (pom == null) {
+      log.error("No POM XML found or failed to fetch POM XML for URL: {}", request.url);
+      return;
+    }
+    pomFailures.forget(request.url);
+    try {
+      processPom(pom, request.pkgVersionId);
+    } catch (Exception e) {
+      log.error("Error fetching or processing POM XML for URL: {}", request.url, e);
     }
-    return pkgVersion;
   }
 
   /**
-   * Builds the POM URL.
+   * Writes a message to the process log, if the process is run with a bundle.
    *
-   * @param group
-   * @param artifact
-   * @param versionName
-   * @return
+   * @param message The message to log.
    */
-  private String buildPomUrl(String group, String artifact, String versionName) {
-    String groupPath = group.replace(".", "/");
-    String artifactPath = artifact.replace(".", "/");
-    String pomFileName = artifact + "-" + versionName + ".pom";
-    
-    StringBuilder urlBuilder = new StringBuilder();
-    urlBuilder.append(GITHUB_POM_URL)
-              .append(groupPath).append("/")
-              .append(artifactPath).append("/")
-              .append(versionName).append("/")
-              .append(pomFileName);
-
-    return urlBuilder.toString();
+  private void logToProcess(String message) {
+    log.info(message);
+    if (processLogger != null) {
+      processLogger.logln(message);
+    }
   }
 
   /**
-   * Fetches the POM XML from the GitHub API.
+   * Fetches a POM, looking for it in the local {@link PomCache} first.
+   * Downloaded POMs of released versions are stored in the cache before being read,
+   * while the rest are read from the repository source while they are being received.
    *
-   * @param url
-   * @return
+   * @param request
+   * @return The POM, or null if it could not be fetched or parsed.
    */
-  private String fetchPomXml(String url) {
+  private PomReader.Pom fetchPom(PomRequest request) {
+    Path cachedPom = pomCache.find(request.group, request.artifact, request.version);
+    if (cachedPom != null) {
+      try (InputStream in = Files.newInputStream(cachedPom)) {
+        PomReader.Pom pom = PomReader.read(in);
+        metrics.increment(SyncMetrics.Counter.CACHE_HITS);
+        return pom;
+      } catch (Exception e) {
+        log.warn("Discarding unreadable cached POM {}: {}", cachedPom, e.getMessage());
+        pomCache.invalidate(request.group, request.artifact, request.version);
+      }
+    }
+    pomCalls.incrementAndGet();
     try {
-      HttpResponse<String> response = sendHttpRequestWithRedirect(url);
-      if (response.statusCode() != 200) {
-        log.error("Failed to fetch POM XML from {}", url);
-        return null;
+      try (InputStream body = source.openPom(request.group, request.artifact, request.version)) {
+        metrics.increment(SyncMetrics.Counter.POMS_FETCHED);
+        if (!pomCache.isCacheable(request.version)) {
+          return PomReader.read(body);
+        }
+        cachedPom = pomCache.store(request.group, request.artifact, request.version, body);
       }
-      return response.body();
+      try (InputStream in = Files.newInputStream(cachedPom)) {
+        return PomReader.read(in);
+      } catch (XMLStreamException e) {
+        pomCache.invalidate(request.group, request.artifact, request.version);
+        throw e;
+      }
+    } catch (XMLStreamException e) {
+      log.error("Failed to parse POM XML from {}", request.url, e);
+      recordPomFailure(request, PomFailureCache.FailureClass.PARSE);
+      return null;
+    } catch (NoSuchFileException e) {
+      log.error("POM XML not found at {}", request.url);
+      recordPomFailure(request, PomFailureCache.FailureClass.NOT_FOUND);
+      return null;
+    } catch (HttpStatusException e) {
+      recordPomFailure(request, e.getStatusCode() == HTTP_NOT_FOUND || e.getStatusCode() == HTTP_GONE
+        ? PomFailureCache.FailureClass.NOT_FOUND : PomFailureCache.FailureClass.HTTP_ERROR);
+      return null;
+    } catch (CircuitOpenException e) {
+      // The repository is down. Its owner package is still marked as synced, so the POM is recorded as a
+      // network failure to be retried by a later sync, otherwise it would not be requested again until the
+      // package changes
+      log.error("Failed to fetch POM XML from {}: {}", request.url, e.getMessage());
+      recordPomFailure(request, PomFailureCache.FailureClass.NETWORK);
+      return null;
+    } catch (OBException e) {
+      log.error("Failed to fetch POM XML from {}", request.url, e);
+      recordPomFailure(request, PomFailureCache.FailureClass.HTTP_ERROR);
+      return null;
     } catch (Exception e) {
-      log.error("Failed to fetch POM XML from {}", url, e);
+      log.error("Failed to fetch POM XML from {}", request.url, e);
+      recordPomFailure(request, PomFailureCache.FailureClass.NETWORK);
       return null;
     }
   }
 
   /**
-   * Processes the POM XML.
+   * Records a failed POM in the negative cache, so it is not requested again until its next attempt is due.
    *
-   * @param pomXml
-   * @param pkgVersion
+   * @param request The failed request.
+   * @param failureClass The kind of failure.
    */
-  private void processPomXml(String pomXml, PackageVersion pkgVersion) {
-    try {
-      Element xmlRootElement = XMLUtil.getInstance()
-        .getRootElement(new ByteArrayInputStream(pomXml.getBytes()));
-      Element dependencies = xmlRootElement.element("dependencies");
-
-      if (dependencies != null) {
-        for (Element dependency : dependencies.elements("dependency")) {
-          String groupId = dependency.elementText("groupId");
-          String artifactId = dependency.elementText("artifactId");
-          String versionDep = dependency.elementText(DependencyManagerConstants.VERSION);
+  private void recordPomFailure(PomRequest request, PomFailureCache.FailureClass failureClass) {
+    pomFailures.recordFailure(request.url, request.group, request.artifact, request.version, failureClass);
+  }
 
-          findOrCreatePackageDependency(pkgVersion, groupId, artifactId, versionDep);
-        }
-      }
-    } catch (Exception e) {
-      log.error("Failed to parse XML input for extracting root element.", e);
+  /**
+   * Processes the dependencies of a POM. Property references in the dependency versions,
+   * such as {@code ${project.version}}, are resolved with the properties and the parent of the POM.
+   *
+   * @param pom
+   * @param pkgVersionId
+   */
+  private void processPom(PomReader.Pom pom, String pkgVersionId) {
+    for (PomReader.Dependency dependency : pom.dependencies()) {
+      findOrCreatePackageDependency(pkgVersionId, dependency.groupId(), dependency.artifactId(),
+        pom.resolve(dependency.version()));
     }
   }
 
   /**
    * Finds or creates a package dependency.
-   * @param pkgVersion
+   * A dependency on etendo-core is not stored, it sets the range of core versions of the package version instead.
+   * The dependency version is resolved against the synced packages, and the dependency is external if it cannot be resolved.
+   * @param pkgVersionId
    * @param group
    * @param artifact
    * @param version
    */
-  private void findOrCreatePackageDependency(PackageVersion pkgVersion, String group, String artifact, String version) {
-    PackageDependency dep = OBDal.getInstance()
-      .createQuery(PackageDependency.class, "e where e.packageVersion.id = :packageVersionId and e.group = :group and e.artifact = :artifact and e.version = :version")
-      .setNamedParameter("packageVersionId", pkgVersion.getId())
-      .setNamedParameter(DependencyManagerConstants.GROUP, group)
-      .setNamedParameter(DependencyManagerConstants.ARTIFACT, artifact)
-      .setNamedParameter(DependencyManagerConstants.VERSION, version)
-      .uniqueResult();
-
-    if (dep == null){
-      if (StringUtils.equals(PackageUtil.ETENDO_CORE, artifact))  {
-        String[] coreVersionSplit = PackageUtil.splitCoreVersionRange(version);
-        pkgVersion.setFromCore(coreVersionSplit[0]);
-        pkgVersion.setLatestCore(coreVersionSplit[1]);
-        OBDal.getInstance().save(pkgVersion);
-      }
-      else {
-        dep = new PackageDependency();
-        dep.setPackageVersion(pkgVersion);
-        dep.setGroup(group);
-        dep.setArtifact(artifact);
-        dep.setVersion(version);
-        dep.setExternalDependency(false);
-        dep.setDependencyVersion(null);
-        OBCriteria<Package> packageCriteria = OBDal.getInstance().createCriteria(Package.class);
-        packageCriteria.add(Restrictions.eq(Package.PROPERTY_ARTIFACT, artifact));
-        packageCriteria.add(Restrictions.eq(Package.PROPERTY_GROUP, group));
-        Package dependencyPackage = (Package) packageCriteria.setMaxResults(1).uniqueResult();
-        dep.setExternalDependency(true);
-        if (dependencyPackage != null) {
-          PackageVersion packageVersion;
-          if (!PackageUtil.isMajorMinorPatchVersion(version)) {
-            packageVersion = PackageUtil.getLastPackageVersion(dependencyPackage);
-          } else {
-            packageVersion = PackageUtil.getPackageVersion(dependencyPackage, version);
-          }
-          dep.setDependencyVersion(packageVersion);
-          if (packageVersion != null) {
-            dep.setExternalDependency(false);
-          }
+  private void findOrCreatePackageDependency(String pkgVersionId, String group, String artifact, String version) {
+    if (index.hasDependency(pkgVersionId, group, artifact, version)) {
+      return;
+    }
+    if (StringUtils.equals(PackageUtil.ETENDO_CORE, artifact)) {
+      String[] coreVersionSplit = PackageUtil.splitCoreVersionRange(version);
+      index.updateCoreRange(pkgVersionId, coreVersionSplit[0], coreVersionSplit[1]);
+    } else {
+      String dependencyVersionId = null;
+      String dependencyPackageId = index.findPackage(group, artifact);
+      if (dependencyPackageId != null) {
+        if (!PackageUtil.isMajorMinorPatchVersion(version)) {
+          dependencyVersionId = index.findLastPackageVersion(dependencyPackageId);
+        } else {
+          dependencyVersionId = index.findPackageVersion(dependencyPackageId, version);
         }
-        OBDal.getInstance().save(dep);
       }
+      index.createPackageDependency(pkgVersionId, group, artifact, version, dependencyVersionId,
+        dependencyVersionId == null);
     }
   }
 
   /**
-   * Sends an HTTP request.
-   *
-   * @param url
-   * @return
-   * @throws Exception
+   * A POM file to fetch for a package version without dependencies.
    */
-  private String sendHttpRequest(String url) throws Exception {
-    HttpRequest request = HttpRequest.newBuilder()
-      .uri(new URI(url))
-      .header(AUTHORIZATION_HEADER, this._auth)
-      .version(HttpClient.Version.HTTP_2)
-      .GET()
-      .build();
-    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-    if (response.statusCode() >= 200 && response.statusCode() < 300) {
-      return response.body();
-    } else {
-      log.error("HTTP Request failed with status code: " + response.statusCode() + " and body: " + response.body());
-      throw new OBException("HTTP Request failed with status code: " + response.statusCode());
+  private static final class PomRequest {
+    private final String pkgVersionId;
+    private final String group;
+    private final String artifact;
+    private final String version;
+    private final String url;
+
+    private PomRequest(String pkgVersionId, String group, String artifact, String version, String url) {
+      this.pkgVersionId = pkgVersionId;
+      this.group = group;
+      this.artifact = artifact;
+      this.version = version;
+      this.url = url;
+    }
+
+    @Override
+    public String toString() {
+      return url;
     }
   }
 
   /**
-   * Sends an HTTP request with redirect.
-   *
-   * @param url
-   * @return
-   * @throws Exception
+   * A package synced in this run, with the ids of the versions found or created for it.
    */
-  private HttpResponse<String> sendHttpRequestWithRedirect(String url) throws Exception {
-    HttpRequest request = HttpRequest.newBuilder()
-      .uri(new URI(url))
-      .header(AUTHORIZATION_HEADER, this._auth)
-      .version(HttpClient.Version.HTTP_2)
-      .GET()
-      .build();
-    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-    if (response.statusCode() == 302) {
-      String newUrl = response.headers().firstValue(LOCATION_HEADER).orElseThrow(() -> new OBException("Redirect URL not found in the response"));
-      request = HttpRequest.newBuilder()
-        .uri(new URI(newUrl))
-        .header(AUTHORIZATION_HEADER, this._auth)
-        .GET()
-        .build();
-      response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-    }
-    if (response.statusCode() >= 200 && response.statusCode() < 300) {
-      return response;
-    } else {
-      String errorMessage = String.format(
-          OBMessageUtils.messageBD("ETDEP_Redirect_HTTP_Request_Failed"),
-          response.statusCode(),
-          response.body()
-      );
-      log.error(errorMessage);
-      throw new OBException(errorMessage);
+  private static final class SyncedPackage {
+    private final String name;
+    private final String updatedAt;
+    private final String group;
+    private final String artifact;
+    private final Map<String, String> versionIds;
+
+    private SyncedPackage(String name, String updatedAt, String group, String artifact,
+      Map<String, String> versionIds) {
+      this.name = name;
+      this.updatedAt = updatedAt;
+      this.group = group;
+      this.artifact = artifact;
+      this.versionIds = versionIds;
     }
   }
 }
@@ -6,7 +6,10 @@
  */
 package com.etendoerp.dependencymanager.process;
 
+import com.etendoerp.dependencymanager.sync.CatalogDeltaWriter;
+import com.etendoerp.dependencymanager.sync.PackageCatalog;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.openbravo.base.session.OBPropertiesProvider;
@@ -32,12 +35,15 @@ import java.io.FileOutputStream;
 
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.HashMap;
 
 /**
  * This class is responsible for executing the process of retrieving packages
  * from repositories and committing them by exporting dataset data to XML,
- * saving it to a file, and updating the dataset's checksum.
+ * saving it to a file along with the delta from the previous catalog revision,
+ * and updating the dataset's checksum.
  * It extends the {@link DalBaseProcess} class, utilizing various utilities to
  * handle datasets and modules.
  */
@@ -47,6 +53,11 @@ public class GetPackagesFromRepositoriesAndCommit extends DalBaseProcess {
     private static final String SUCCESS = "Success";
     public static final String AD_DATASET_ID = "9F0311EFA2C1406D81B03FE673FF0A17";
     public static final String AD_MODULE_ID = "2EC4FFAFFE984592BA9859A8C9E25BF0";
+    public static final String RETAINED_DELTAS_PROPERTY = "etdep.catalog.retained.deltas";
+    private static final int DEFAULT_RETAINED_DELTAS = 100;
+    private static final String STANDARD_FOLDER = "standard";
+    private static final String CATALOG_FOLDER = "catalog";
+    private static final String DATASET_FILE_NAME = "Packages_dataset.xml";
 
     /**
      * Executes the process to retrieve packages from repositories and commit them.
@@ -104,6 +115,7 @@ public class GetPackagesFromRepositoriesAndCommit extends DalBaseProcess {
             String projectPath = getProjectPath();
             updateModuleDirsToScan(projectPath);
             String modLocation = getModuleLocation(projectPath, moduleJavaPackage);
+            updateCatalog(xml, projectPath, modLocation, moduleJavaPackage);
             saveXMLToFile(xml, projectPath, modLocation, moduleJavaPackage);
             myError = createSuccessOBError(conn, language);
 
@@ -215,8 +227,8 @@ public class GetPackagesFromRepositoriesAndCommit extends DalBaseProcess {
      * @throws Exception if an error occurs while saving the file.
      */
     protected void saveXMLToFile(String xml, String projectPath, String modLocation, String moduleJavaPackage) throws Exception {
-        File myFolder = new File(projectPath + (StringUtils.equals(AD_MODULE_ID, "0") ? "" : modLocation + moduleJavaPackage) + "/referencedata/standard");
-        File myFile = new File(myFolder.getPath() + "/Packages_dataset" + ".xml");
+        File myFolder = new File(getReferenceDataFolder(projectPath, modLocation, moduleJavaPackage), STANDARD_FOLDER);
+        File myFile = new File(myFolder, DATASET_FILE_NAME);
 
         if (!myFolder.exists()) {
             myFolder.mkdirs();
@@ -229,6 +241,40 @@ public class GetPackagesFromRepositoriesAndCommit extends DalBaseProcess {
         log4j.info("Saved XML file to: " + myFile.getAbsolutePath());
     }
 
+    /**
+     * Writes the delta of the catalog from the dataset saved by the previous run to the new one, before the new
+     * one is saved, and updates the catalog revision. Consumers use the deltas to apply only the changes since
+     * the revision they are at. See {@link CatalogDeltaWriter} for the format.
+     *
+     * @param xml The XML content of the new dataset.
+     * @param projectPath The path of the project.
+     * @param modLocation The location of the module within the project.
+     * @param moduleJavaPackage The Java package of the module.
+     * @throws IOException if the catalog files cannot be read or written.
+     */
+    protected void updateCatalog(String xml, String projectPath, String modLocation, String moduleJavaPackage) throws IOException {
+        File referenceDataFolder = getReferenceDataFolder(projectPath, modLocation, moduleJavaPackage);
+        Path previousDataset = new File(new File(referenceDataFolder, STANDARD_FOLDER), DATASET_FILE_NAME).toPath();
+        int retainedDeltas = NumberUtils.toInt(OBPropertiesProvider.getInstance()
+                .getOpenbravoProperties()
+                .getProperty(RETAINED_DELTAS_PROPERTY), DEFAULT_RETAINED_DELTAS);
+        PackageCatalog catalog = CatalogDeltaWriter.update(new File(referenceDataFolder, CATALOG_FOLDER).toPath(),
+                previousDataset, xml.getBytes(StandardCharsets.UTF_8), retainedDeltas);
+        log4j.info("Packages catalog at revision " + catalog.revision);
+    }
+
+    /**
+     * Gets the reference data folder of the module.
+     *
+     * @param projectPath The path of the project.
+     * @param modLocation The location of the module within the project.
+     * @param moduleJavaPackage The Java package of the module.
+     * @return The reference data folder.
+     */
+    protected File getReferenceDataFolder(String projectPath, String modLocation, String moduleJavaPackage) {
+        return new File(projectPath + (StringUtils.equals(AD_MODULE_ID, "0") ? "" : modLocation + moduleJavaPackage) + "/referencedata");
+    }
+
     /**
      * Executes a Bash script located in the project's resources directory.
      *
@@ -1,5 +1,6 @@
 package com.etendoerp.dependencymanager.process;
 
+import com.etendoerp.dependencymanager.sync.SyncMetrics;
 import com.etendoerp.dependencymanager.util.UpdateLocalPackagesUtil;
 import org.openbravo.scheduling.ProcessBundle;
 import org.openbravo.service.db.DalBaseProcess;
@@ -11,7 +12,12 @@ public class UpdateLocalPackages extends DalBaseProcess {
 
   @Override
   protected void doExecute(ProcessBundle bundle) throws Exception {
-    UpdateLocalPackagesUtil.update();
+    try {
+      UpdateLocalPackagesUtil.update();
+    } finally {
+      bundle.getLogger().logln("Sync metrics "
+          + SyncMetrics.forSync(UpdateLocalPackagesUtil.METRICS_NAME).getLastRun());
+    }
   }
 
 }
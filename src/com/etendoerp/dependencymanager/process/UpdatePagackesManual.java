@@ -5,6 +5,7 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.openbravo.client.application.process.BaseProcessActionHandler;
 import org.openbravo.dal.service.OBDal;
@@ -14,12 +15,13 @@ import org.openbravo.service.db.DbUtility;
 
 public class UpdatePagackesManual extends BaseProcessActionHandler {
   private static final Logger log = LogManager.getLogger();
+  private static final String FULL_RESYNC_PARAM = "fullResync";
 
 
   @Override
   protected JSONObject doExecute(Map<String, Object> parameters, String data) {
     try {
-      new GetPackagesFromRepositories().doExecute(null);
+      new GetPackagesFromRepositories(isFullResync(data)).doExecute(null);
       // Success Message
       return getSuccessMessage(OBMessageUtils.messageBD("ProcessOK"));
 
@@ -40,6 +42,22 @@ public class UpdatePagackesManual extends BaseProcessActionHandler {
   }
 
 
+  /**
+   * Checks whether the user asked for a full resync instead of an incremental one.
+   *
+   * @param data The content sent by the process definition.
+   * @return true if the Full Resync parameter is checked.
+   */
+  private static boolean isFullResync(String data) {
+    try {
+      JSONObject params = new JSONObject(data).optJSONObject("_params");
+      return params != null && params.optBoolean(FULL_RESYNC_PARAM, false);
+    } catch (JSONException e) {
+      log.error("Error when reading the process parameters", e);
+      return false;
+    }
+  }
+
   /**
    * Returns a JSONObject with the success message to be printed
    */
@@ -0,0 +1,215 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Writes the delta files of the published packages catalog, described by a {@link PackageCatalog}.
+ * <p>
+ * A delta holds the rows of the packages dataset that have been added or changed since the previous
+ * revision, in the format read by the {@link PackageDatasetReader}, with references written as the
+ * referenced id. Its first row is a {@value #REVISION_ROW} with the revision and the previous one, and
+ * every row removed is written as a {@value #DELETED_ROW} with its entity and id. Deltas are computed by
+ * comparing the new snapshot with the previous one, which must be the snapshot of the current revision.
+ * Otherwise the chain of deltas is broken and starts again from the new revision.
+ */
+public class CatalogDeltaWriter {
+  private static final Logger log = LogManager.getLogger();
+  public static final String REVISION_ROW = "CatalogRevision";
+  public static final String DELETED_ROW = "DeletedRow";
+  public static final String REVISION = "revision";
+  public static final String PREVIOUS_REVISION = "previousRevision";
+  public static final String ENTITY = "entity";
+  private static final String ID = "id";
+  private static final String ROOT_ELEMENT = "catalogDelta";
+  private static final String XSI_PREFIX = "xsi";
+  private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+  private static final String NIL = "nil";
+  private static final String SHA_256 = "SHA-256";
+  private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newFactory();
+
+  private CatalogDeltaWriter() {
+  }
+
+  /**
+   * Writes the delta from the previous snapshot to a new one, and updates the catalog.
+   * Nothing is written if the snapshots have the same rows.
+   *
+   * @param catalogDir
+   *     the directory of the catalog and its deltas
+   * @param previousSnapshot
+   *     the snapshot of the current revision, which may not exist
+   * @param snapshot
+   *     the content of the new snapshot
+   * @param retainedDeltas
+   *     the number of deltas kept, older ones are deleted
+   * @return the updated catalog
+   * @throws IOException
+   *     if the files cannot be read or written
+   */
+  public static PackageCatalog update(Path catalogDir, Path previousSnapshot, byte[] snapshot, int retainedDeltas)
+      throws IOException {
+    Path catalogFile = catalogDir.resolve(PackageCatalog.CATALOG_FILE_NAME);
+    PackageCatalog catalog = SyncFiles.readJson(catalogFile, new TypeReference<>() {
+    });
+    String snapshotSha256 = sha256(snapshot);
+    Map<String, PackageDatasetReader.DatasetRow> previousRows = null;
+    if (catalog != null && Files.isRegularFile(previousSnapshot)) {
+      byte[] previousContent = Files.readAllBytes(previousSnapshot);
+      if (sha256(previousContent).equals(catalog.snapshotSha256)) {
+        previousRows = readRows(previousContent);
+      } else {
+        log.warn("The previous packages dataset is not the snapshot of catalog revision {}, its deltas start again",
+            catalog.revision);
+      }
+    }
+
+    PackageCatalog updated;
+    if (previousRows == null) {
+      long revision = catalog != null ? catalog.revision + 1 : 1;
+      updated = new PackageCatalog(revision, revision, snapshotSha256);
+    } else {
+      long revision = catalog.revision + 1;
+      Path deltaFile = catalogDir.resolve(PackageCatalog.deltaFileName(revision));
+      if (!writeDelta(deltaFile, revision, previousRows, readRows(snapshot))) {
+        return catalog;
+      }
+      long oldestRevision = Math.max(catalog.oldestRevision, revision - Math.max(1, retainedDeltas));
+      updated = new PackageCatalog(revision, oldestRevision, snapshotSha256);
+    }
+    if (catalog != null) {
+      deleteDeltas(catalogDir, catalog.oldestRevision, updated.oldestRevision);
+    }
+    SyncFiles.writeJson(catalogFile, updated);
+    log.info("Packages catalog updated to revision {}, with deltas from revision {}", updated.revision,
+        updated.oldestRevision);
+    return updated;
+  }
+
+  /**
+   * Writes the rows changed between two snapshots to a delta file.
+   *
+   * @return false if there are no changes, and no file has been written
+   */
+  private static boolean writeDelta(Path deltaFile, long revision,
+      Map<String, PackageDatasetReader.DatasetRow> previousRows, Map<String, PackageDatasetReader.DatasetRow> rows)
+      throws IOException {
+    Map<String, PackageDatasetReader.DatasetRow> changedRows = new LinkedHashMap<>();
+    for (Map.Entry<String, PackageDatasetReader.DatasetRow> row : rows.entrySet()) {
+      PackageDatasetReader.DatasetRow previousRow = previousRows.remove(row.getKey());
+      if (previousRow == null || !previousRow.values().equals(row.getValue().values())) {
+        changedRows.put(row.getKey(), row.getValue());
+      }
+    }
+    // The rows left are the ones removed
+    if (changedRows.isEmpty() && previousRows.isEmpty()) {
+      return false;
+    }
+
+    Files.createDirectories(deltaFile.toAbsolutePath().getParent());
+    Path tempFile = Files.createTempFile(deltaFile.toAbsolutePath().getParent(), deltaFile.getFileName().toString(),
+        ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(tempFile)) {
+        XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(ROOT_ELEMENT);
+        writer.writeNamespace(XSI_PREFIX, XSI_NAMESPACE);
+        writer.writeStartElement(REVISION_ROW);
+        writeProperty(writer, REVISION, Long.toString(revision));
+        writeProperty(writer, PREVIOUS_REVISION, Long.toString(revision - 1));
+        writer.writeEndElement();
+        for (PackageDatasetReader.DatasetRow row : changedRows.values()) {
+          writer.writeStartElement(row.entityName());
+          for (Map.Entry<String, String> value : row.values().entrySet()) {
+            writeProperty(writer, value.getKey(), value.getValue());
+          }
+          writer.writeEndElement();
+        }
+        for (PackageDatasetReader.DatasetRow row : previousRows.values()) {
+          writer.writeStartElement(DELETED_ROW);
+          writeProperty(writer, ENTITY, row.entityName());
+          writeProperty(writer, ID, row.get(ID));
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+      }
+      Files.move(tempFile, deltaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to write the catalog delta " + deltaFile, e);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+    log.info("Catalog delta of revision {}: {} rows changed, {} rows removed", revision, changedRows.size(),
+        previousRows.size());
+    return true;
+  }
+
+  /**
+   * Deletes the deltas of the revisions after {@code fromRevision} and up to {@code toRevision}, which can no
+   * longer be applied.
+   */
+  private static void deleteDeltas(Path catalogDir, long fromRevision, long toRevision) throws IOException {
+    for (long revision = fromRevision + 1; revision <= toRevision; revision++) {
+      Files.deleteIfExists(catalogDir.resolve(PackageCatalog.deltaFileName(revision)));
+    }
+  }
+
+  private static void writeProperty(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+    if (value == null) {
+      writer.writeEmptyElement(name);
+      writer.writeAttribute(XSI_PREFIX, XSI_NAMESPACE, NIL, "true");
+    } else {
+      writer.writeStartElement(name);
+      writer.writeCharacters(value);
+      writer.writeEndElement();
+    }
+  }
+
+  /**
+   * @return the rows of a snapshot, by entity and id
+   */
+  private static Map<String, PackageDatasetReader.DatasetRow> readRows(byte[] snapshot) throws IOException {
+    Map<String, PackageDatasetReader.DatasetRow> rows = new LinkedHashMap<>();
+    try (InputStream in = new ByteArrayInputStream(snapshot)) {
+      PackageDatasetReader.read(in, row -> rows.put(row.entityName() + '/' + row.get(ID), row));
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to read the packages dataset", e);
+    }
+    return rows;
+  }
+
+  /**
+   * @return the SHA-256 of the content, in hexadecimal
+   */
+  public static String sha256(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance(SHA_256).digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new OBException(e);
+    }
+  }
+}
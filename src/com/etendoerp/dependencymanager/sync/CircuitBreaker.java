@@ -0,0 +1,90 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Circuit breaker of the requests sent to a host.
+ * <p>
+ * After {@value #FAILURE_THRESHOLD} consecutive failures the circuit opens, and requests fail fast for
+ * {@value #OPEN_MILLIS} milliseconds instead of waiting for a host that is down. Then a single trial
+ * request is let through: if it succeeds the circuit closes again, otherwise it stays open for another
+ * period. There is a single breaker per host, shared by every caller in the JVM.
+ */
+public class CircuitBreaker {
+  private static final Logger log = LogManager.getLogger();
+  static final int FAILURE_THRESHOLD = 5;
+  static final long OPEN_MILLIS = 30_000;
+  private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  private final String host;
+  private final LongSupplier clock;
+  private int consecutiveFailures;
+  private long openUntil;
+
+  CircuitBreaker(String host) {
+    this(host, System::currentTimeMillis);
+  }
+
+  /**
+   * @param clock
+   *     the source of the current time, in milliseconds
+   */
+  CircuitBreaker(String host, LongSupplier clock) {
+    this.host = host;
+    this.clock = clock;
+  }
+
+  /**
+   * @return the shared breaker of the host
+   */
+  public static CircuitBreaker forHost(String host) {
+    return breakers.computeIfAbsent(String.valueOf(host), CircuitBreaker::new);
+  }
+
+  /**
+   * Checks if a request can be sent to the host.
+   *
+   * @throws CircuitOpenException
+   *     if the circuit is open
+   */
+  public synchronized void checkAllowed() {
+    if (consecutiveFailures < FAILURE_THRESHOLD) {
+      return;
+    }
+    long now = clock.getAsLong();
+    if (now < openUntil) {
+      throw new CircuitOpenException(
+          String.format("Requests to %s are suspended until %s after repeated failures", host, new Date(openUntil)));
+    }
+    // Let this request through as the trial, the rest keep failing fast until it completes
+    openUntil = now + OPEN_MILLIS;
+  }
+
+  /**
+   * Records a successful request, closing the circuit.
+   */
+  public synchronized void recordSuccess() {
+    if (consecutiveFailures >= FAILURE_THRESHOLD) {
+      log.info("Requests to {} are working again", host);
+    }
+    consecutiveFailures = 0;
+  }
+
+  /**
+   * Records a failed request, opening the circuit once the threshold is reached.
+   */
+  public synchronized void recordFailure() {
+    consecutiveFailures++;
+    if (consecutiveFailures >= FAILURE_THRESHOLD) {
+      openUntil = clock.getAsLong() + OPEN_MILLIS;
+      log.warn("Suspending requests to {} until {} after {} consecutive failures", host, new Date(openUntil),
+          consecutiveFailures);
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package com.etendoerp.dependencymanager.sync;
+
+import org.openbravo.base.exception.OBException;
+
+/**
+ * Thrown when a request is not sent because the {@link CircuitBreaker} of its host is open.
+ */
+public class CircuitOpenException extends OBException {
+  private static final long serialVersionUID = 1L;
+
+  public CircuitOpenException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,147 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Bounded pool of workers used to run the network side of the package synchronization concurrently.
+ * <p>
+ * Workers only perform HTTP calls and parsing: every task submitted here must be free of OBDal access,
+ * because the Hibernate session is bound to the thread that runs the process. Results are handed back
+ * to the caller, which applies them to the database on its own thread.
+ */
+public class ConcurrentFetcher implements AutoCloseable {
+  private static final Logger log = LogManager.getLogger();
+  public static final String PARALLELISM_PROPERTY = "etdep.sync.parallelism";
+  public static final int DEFAULT_PARALLELISM = 8;
+
+  private final ExecutorService executor;
+  private final int parallelism;
+
+  /**
+   * Task executed by the workers for each key.
+   *
+   * @param <K>
+   *     the type of the key identifying the resource to fetch
+   * @param <V>
+   *     the type of the fetched value
+   */
+  @FunctionalInterface
+  public interface FetchTask<K, V> {
+    V fetch(K key) throws Exception;
+  }
+
+  /**
+   * Creates a fetcher that runs at most {@code parallelism} tasks at the same time.
+   *
+   * @param parallelism
+   *     the maximum number of concurrent tasks, values lower than 1 are treated as 1
+   */
+  public ConcurrentFetcher(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "etdep-sync-fetch-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    this.executor = Executors.newFixedThreadPool(this.parallelism, threadFactory);
+  }
+
+  /**
+   * Creates a fetcher using the parallelism configured in the {@value #PARALLELISM_PROPERTY}
+   * property of Openbravo.properties, or {@value #DEFAULT_PARALLELISM} if it is not set.
+   *
+   * @return a new fetcher, which must be closed by the caller
+   */
+  public static ConcurrentFetcher fromProperties() {
+    return new ConcurrentFetcher(getConfiguredParallelism());
+  }
+
+  /**
+   * @return the parallelism configured in the {@value #PARALLELISM_PROPERTY} property of Openbravo.properties,
+   *     or {@value #DEFAULT_PARALLELISM} if it is not set, at least 1
+   */
+  public static int getConfiguredParallelism() {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return Math.max(1, NumberUtils.toInt(properties.getProperty(PARALLELISM_PROPERTY), DEFAULT_PARALLELISM));
+  }
+
+  /**
+   * @return the maximum number of tasks that run at the same time
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Runs the task for every key concurrently and waits for all of them to finish.
+   * Failed tasks are logged and left out of the result, so one failure does not affect the others.
+   *
+   * @param keys
+   *     the keys to fetch
+   * @param task
+   *     the fetch to run for each key, it must not access OBDal
+   * @return the fetched values in the iteration order of {@code keys}; values may be null if the task returned null
+   */
+  public <K, V> Map<K, V> fetchAll(Collection<K> keys, FetchTask<K, V> task) {
+    List<K> orderedKeys = new ArrayList<>(keys);
+    List<CompletableFuture<V>> futures = new ArrayList<>(orderedKeys.size());
+    for (K key : orderedKeys) {
+      futures.add(fetchAsync(key, task));
+    }
+
+    Map<K, V> results = new LinkedHashMap<>();
+    for (int i = 0; i < orderedKeys.size(); i++) {
+      K key = orderedKeys.get(i);
+      try {
+        results.put(key, futures.get(i).join());
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        log.error("Failed to fetch {} - ERROR: {}", key, cause.getMessage());
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Runs the task for a single key in the background, for example to prefetch a resource that
+   * will be needed once the current one has been processed. The task works for the {@link SyncMetrics}
+   * run of the calling thread.
+   *
+   * @param key
+   *     the key to fetch
+   * @param task
+   *     the fetch to run, it must not access OBDal
+   * @return the future value; if the task fails, it completes with a {@link CompletionException}
+   */
+  public <K, V> CompletableFuture<V> fetchAsync(K key, FetchTask<K, V> task) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return task.fetch(key);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, runnable -> executor.execute(SyncMetrics.bindToCurrentRun(runnable)));
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
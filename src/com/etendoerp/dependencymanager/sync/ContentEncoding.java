@@ -0,0 +1,140 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiates compressed responses, which neither {@link java.net.http.HttpClient} nor {@link URLConnection}
+ * do on their own.
+ * <p>
+ * Requests announce that gzip and deflate are accepted, and the bodies of the responses are decompressed
+ * while they are read, so they are never held in memory as a whole.
+ */
+public class ContentEncoding {
+  public static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+  public static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+  public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+  private static final String GZIP = "gzip";
+  private static final String X_GZIP = "x-gzip";
+  private static final String DEFLATE = "deflate";
+  private static final String IDENTITY = "identity";
+  private static final int BUFFER_SIZE = 8192;
+
+  private ContentEncoding() {
+  }
+
+  /**
+   * Adds the accepted encodings to a request.
+   *
+   * @param builder
+   *     the builder of the request
+   * @return the same builder
+   */
+  public static HttpRequest.Builder accept(HttpRequest.Builder builder) {
+    return builder.header(ACCEPT_ENCODING_HEADER, ACCEPTED_ENCODINGS);
+  }
+
+  /**
+   * Adds the accepted encodings to a connection that has not been opened yet.
+   *
+   * @param connection
+   *     the connection
+   */
+  public static void accept(URLConnection connection) {
+    connection.setRequestProperty(ACCEPT_ENCODING_HEADER, ACCEPTED_ENCODINGS);
+  }
+
+  /**
+   * Decompresses the body of a response according to its {@code Content-Encoding} header.
+   *
+   * @param body
+   *     the body as received
+   * @param headers
+   *     the headers of the response
+   * @return the decompressed body, which closes the received one when closed
+   * @throws IOException
+   *     if the encoding is not supported or the body is not properly compressed
+   */
+  public static InputStream decode(InputStream body, HttpHeaders headers) throws IOException {
+    return decode(body, headers.firstValue(CONTENT_ENCODING_HEADER).orElse(null));
+  }
+
+  /**
+   * Opens the body of a connection, decompressing it according to its {@code Content-Encoding} header.
+   *
+   * @param connection
+   *     the connection, with the accepted encodings already added
+   * @return the decompressed body
+   * @throws IOException
+   *     if the connection fails, or the body cannot be decompressed
+   */
+  public static InputStream open(URLConnection connection) throws IOException {
+    return decode(connection.getInputStream(), connection.getContentEncoding());
+  }
+
+  /**
+   * Decompresses a body encoded with the given content encoding.
+   *
+   * @param body
+   *     the body as received
+   * @param contentEncoding
+   *     the value of the {@code Content-Encoding} header, or null if the body is not encoded
+   * @return the decompressed body, which closes the received one when closed
+   * @throws IOException
+   *     if the encoding is not supported or the body is not properly compressed
+   */
+  public static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+    String encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase(Locale.ROOT) : IDENTITY;
+    switch (encoding) {
+      case "":
+      case IDENTITY:
+        return body;
+      case GZIP:
+      case X_GZIP:
+        try {
+          return new GZIPInputStream(body, BUFFER_SIZE);
+        } catch (IOException e) {
+          body.close();
+          throw e;
+        }
+      case DEFLATE:
+        return inflate(body);
+      default:
+        body.close();
+        throw new IOException("Unsupported content encoding: " + contentEncoding);
+    }
+  }
+
+  /**
+   * HTTP deflate is the zlib format, but some servers send raw deflate data instead, so the zlib header
+   * is checked before choosing how to inflate it.
+   */
+  private static InputStream inflate(InputStream body) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(body, BUFFER_SIZE);
+    buffered.mark(2);
+    int cmf = buffered.read();
+    int flg = buffered.read();
+    buffered.reset();
+    boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    Inflater inflater = new Inflater(!zlib);
+    return new InflaterInputStream(buffered, inflater, BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          // An inflater given to the stream is not released by it
+          inflater.end();
+        }
+      }
+    };
+  }
+}
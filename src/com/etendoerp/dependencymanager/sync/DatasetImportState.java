@@ -0,0 +1,170 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.file.Path;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Validators and SHA-256 of the last packages dataset imported successfully, used to skip the import when
+ * the published dataset has not changed.
+ * <p>
+ * The validators are sent as conditional headers, so an unchanged dataset is answered with a 304 and is
+ * neither downloaded nor parsed. The hash covers the servers that do not honour them, or that return new
+ * validators for the same content. The revision of the {@link PackageCatalog} the imported rows belong to
+ * is kept too, when it is known, so the next update can apply only the deltas published since then.
+ * The state is only persisted when {@link #save()} is called, after the imported rows have been committed,
+ * and it is ignored if it was stored for another dataset URL.
+ */
+public class DatasetImportState {
+  private static final Logger log = LogManager.getLogger();
+  private static final String STATE_FILE_NAME = "dataset-import-state.json";
+
+  private final Path file;
+  private final String url;
+  private Imported imported;
+
+  private DatasetImportState(Path file, String url, Imported imported) {
+    this.file = file;
+    this.url = url;
+    this.imported = imported;
+  }
+
+  /**
+   * Loads the state of a dataset stored in the sync cache directory.
+   *
+   * @param url
+   *     the URL of the dataset
+   * @return the loaded state, empty if the dataset has not been imported yet
+   * @throws IOException
+   *     if the cache directory cannot be accessed
+   */
+  public static DatasetImportState load(String url) throws IOException {
+    Path stateFile = SyncFiles.getCacheDirectory().resolve(STATE_FILE_NAME);
+    Imported stored = SyncFiles.readJson(stateFile, new TypeReference<>() {
+    });
+    boolean sameDataset = stored != null && StringUtils.equals(url, stored.url);
+    return new DatasetImportState(stateFile, url, sameDataset ? stored : null);
+  }
+
+  /**
+   * Adds the conditional headers of the last import to the request, if it is known.
+   *
+   * @param connection
+   *     the connection of the request, not connected yet
+   */
+  public void addConditionalHeaders(URLConnection connection) {
+    if (imported == null) {
+      return;
+    }
+    if (imported.etag != null) {
+      connection.setRequestProperty(HttpValidatorCache.IF_NONE_MATCH_HEADER, imported.etag);
+    }
+    if (imported.lastModified != null) {
+      connection.setRequestProperty(HttpValidatorCache.IF_MODIFIED_SINCE_HEADER, imported.lastModified);
+    }
+  }
+
+  /**
+   * Checks if a dataset has the same content as the last one imported.
+   *
+   * @param sha256
+   *     the SHA-256 of the dataset, as received after decoding its content encoding
+   * @return true if the dataset does not need to be imported
+   */
+  public boolean isImported(String sha256) {
+    return imported != null && StringUtils.equals(sha256, imported.sha256);
+  }
+
+  /**
+   * @return the catalog revision of the last import, null if it is not known
+   */
+  public Long getRevision() {
+    return imported != null ? imported.revision : null;
+  }
+
+  /**
+   * Records that a dataset has been imported, keeping the validators of its response.
+   *
+   * @param connection
+   *     the connection the dataset was received from
+   * @param sha256
+   *     the SHA-256 of the dataset
+   * @param catalog
+   *     the published catalog, whose revision is kept if the dataset is its snapshot, may be null
+   */
+  public void markImported(URLConnection connection, String sha256, PackageCatalog catalog) {
+    imported = new Imported(url, connection.getHeaderField(HttpValidatorCache.ETAG_HEADER),
+        connection.getHeaderField(HttpValidatorCache.LAST_MODIFIED_HEADER), sha256, null);
+    markRevision(catalog);
+  }
+
+  /**
+   * Records the catalog revision of the last import, if the imported dataset is the snapshot of the catalog.
+   *
+   * @param catalog
+   *     the published catalog, may be null
+   */
+  public void markRevision(PackageCatalog catalog) {
+    if (catalog != null && isImported(catalog.snapshotSha256)) {
+      imported.revision = catalog.revision;
+    }
+  }
+
+  /**
+   * Records that the deltas up to the latest revision of the catalog have been applied. The rows are then
+   * the ones of its snapshot, but the validators of the previous download no longer describe them.
+   *
+   * @param catalog
+   *     the published catalog
+   */
+  public void markDeltasApplied(PackageCatalog catalog) {
+    imported = new Imported(url, null, null, catalog.snapshotSha256, catalog.revision);
+  }
+
+  /**
+   * Forgets the last import, so the dataset is downloaded and imported again.
+   */
+  public void clear() {
+    imported = null;
+  }
+
+  /**
+   * Saves the state to the sync cache directory. A failure is only logged, the dataset is then imported
+   * again on the next update.
+   */
+  public void save() {
+    try {
+      SyncFiles.writeJson(file, imported != null ? imported : new Imported());
+    } catch (IOException e) {
+      log.error("Failed to save the packages dataset import state to {}", file, e);
+    }
+  }
+
+  /**
+   * The last dataset imported.
+   */
+  public static class Imported {
+    public String url;
+    public String etag;
+    public String lastModified;
+    public String sha256;
+    public Long revision;
+
+    public Imported() {
+    }
+
+    public Imported(String url, String etag, String lastModified, String sha256, Long revision) {
+      this.url = url;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.sha256 = sha256;
+      this.revision = revision;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming parser of the responses of the GitHub packages API.
+ * <p>
+ * The responses are read token by token, and only the fields used by the synchronization are kept,
+ * so the rest of each package or version is skipped without being materialized.
+ */
+public class GitHubApiParser {
+  private static final JsonFactory jsonFactory = new JsonFactory();
+  private static final String NAME = "name";
+  private static final String UPDATED_AT = "updated_at";
+  private static final String REPOSITORY = "repository";
+
+  private GitHubApiParser() {
+  }
+
+  /**
+   * Parses a page of the package list.
+   *
+   * @param body
+   *     the body of the response, it is not closed
+   * @return the packages of the page
+   * @throws IOException
+   *     if the body cannot be read or is not a JSON array
+   */
+  public static List<RepositoryPackage> readPackages(InputStream body) throws IOException {
+    List<RepositoryPackage> packages = new ArrayList<>();
+    try (JsonParser parser = createParser(body)) {
+      while (nextArrayElement(parser)) {
+        String name = null;
+        String updatedAt = null;
+        String repositoryName = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          parser.nextToken();
+          if (NAME.equals(field)) {
+            name = parser.getValueAsString();
+          } else if (UPDATED_AT.equals(field)) {
+            updatedAt = parser.getValueAsString();
+          } else if (REPOSITORY.equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+            repositoryName = readName(parser);
+          } else {
+            parser.skipChildren();
+          }
+        }
+        packages.add(new RepositoryPackage(name, updatedAt, repositoryName));
+      }
+    }
+    return packages;
+  }
+
+  /**
+   * Parses the version list of a package.
+   *
+   * @param body
+   *     the body of the response, it is not closed
+   * @return the versions of the package
+   * @throws IOException
+   *     if the body cannot be read or is not a JSON array
+   */
+  public static List<RepositoryPackageVersion> readVersions(InputStream body) throws IOException {
+    List<RepositoryPackageVersion> versions = new ArrayList<>();
+    try (JsonParser parser = createParser(body)) {
+      while (nextArrayElement(parser)) {
+        versions.add(new RepositoryPackageVersion(readName(parser)));
+      }
+    }
+    return versions;
+  }
+
+  private static JsonParser createParser(InputStream body) throws IOException {
+    JsonParser parser = jsonFactory.createParser(body);
+    parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    if (parser.nextToken() != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "Expected a JSON array");
+    }
+    return parser;
+  }
+
+  /**
+   * Moves the parser to the start of the next object of the array, skipping any other value.
+   *
+   * @return false once the end of the array is reached
+   */
+  private static boolean nextArrayElement(JsonParser parser) throws IOException {
+    JsonToken token = parser.nextToken();
+    while (token != null && token != JsonToken.END_ARRAY) {
+      if (token == JsonToken.START_OBJECT) {
+        return true;
+      }
+      parser.skipChildren();
+      token = parser.nextToken();
+    }
+    return false;
+  }
+
+  /**
+   * Reads the current object up to its end, keeping only its {@code name} field.
+   */
+  private static String readName(JsonParser parser) throws IOException {
+    String name = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if (NAME.equals(field)) {
+        name = parser.getValueAsString();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return name;
+  }
+}
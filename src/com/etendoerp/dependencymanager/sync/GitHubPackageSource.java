@@ -0,0 +1,262 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Package source backed by the GitHub packages API, and by the GitHub Maven registry for the POMs.
+ * <p>
+ * Listings are paginated following their {@code Link} header. If a {@link HttpValidatorCache} is given,
+ * the package pages and the first page of each version listing are requested conditionally, and the
+ * validators of their responses are staged under their location: the caller confirms them once the
+ * response has been applied. Requests are sent with the {@link ResilientHttpClient}, accepting compressed
+ * responses, which are decompressed while they are read.
+ * The bytes received are counted in the {@link SyncMetrics} run of the thread that sends the request.
+ */
+public class GitHubPackageSource implements PackageRepositorySource {
+  private static final Logger log = LogManager.getLogger();
+  public static final String DEFAULT_PACKAGES_URL = "https://api.github.com/orgs/etendosoftware/packages";
+  public static final String DEFAULT_POM_URL = "https://maven.pkg.github.com/etendosoftware/etendo_core/";
+  public static final String ETENDO_PACKAGES_URL = "https://deps.labs.etendo.cloud/api/v1/packages";
+  public static final String GITHUB_USER = "githubUser";
+  public static final String GITHUB_TOKEN = "githubToken";
+  public static final String LOCATION_HEADER = "Location";
+  private static final String AUTHORIZATION_HEADER = "Authorization";
+  private static final String BASIC_AUTH_TOKEN = "Basic ";
+  private static final String PACKAGES_PAGE_QUERY = "?package_type=maven&per_page=100&page=";
+  private static final String VERSIONS_PATH = "/maven/%s/versions?per_page=%d";
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_FOUND = 302;
+  private static final int HTTP_NOT_MODIFIED = 304;
+  private static final HttpClient httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+
+  private final String packagesUrl;
+  private final String pomUrl;
+  private final String authorization;
+  private final ResilientHttpClient client;
+  private final HttpValidatorCache validatorCache;
+
+  /**
+   * Parses the body of a response while it is being received.
+   */
+  @FunctionalInterface
+  private interface BodyReader<T> {
+    T read(InputStream body, HttpHeaders headers) throws IOException;
+  }
+
+  /**
+   * Creates a source.
+   *
+   * @param packagesUrl
+   *     the URL of the packages of the organization, without a trailing slash
+   * @param pomUrl
+   *     the URL of the Maven registry, with a trailing slash
+   * @param authorization
+   *     the value of the {@code Authorization} header of every request
+   * @param client
+   *     the client used to send the requests
+   * @param validatorCache
+   *     the validators used for conditional requests, or null to always request full responses
+   */
+  public GitHubPackageSource(String packagesUrl, String pomUrl, String authorization, ResilientHttpClient client,
+      HttpValidatorCache validatorCache) {
+    this.packagesUrl = packagesUrl;
+    this.pomUrl = pomUrl;
+    this.authorization = authorization;
+    this.client = client;
+    this.validatorCache = validatorCache;
+  }
+
+  /**
+   * Creates a source authenticated with the {@value #GITHUB_USER} and {@value #GITHUB_TOKEN} properties of
+   * Openbravo.properties.
+   *
+   * @param packagesUrl
+   *     the URL of the packages of the organization, without a trailing slash
+   * @param pomUrl
+   *     the URL of the Maven registry, with a trailing slash
+   * @param validatorCache
+   *     the validators used for conditional requests, or null to always request full responses
+   * @return the source
+   */
+  public static GitHubPackageSource fromProperties(String packagesUrl, String pomUrl,
+      HttpValidatorCache validatorCache) {
+    return new GitHubPackageSource(packagesUrl, pomUrl, getAuthorization(),
+        ResilientHttpClient.fromProperties(httpClient), validatorCache);
+  }
+
+  /**
+   * Creates a source for interactive lookups, authenticated like {@link #fromProperties}. Its requests fail
+   * instead of waiting long for an exhausted rate limit, and are never conditional.
+   *
+   * @param packagesUrl
+   *     the URL of the packages of the organization, without a trailing slash
+   * @param pomUrl
+   *     the URL of the Maven registry, with a trailing slash
+   * @return the source
+   */
+  public static GitHubPackageSource forLookups(String packagesUrl, String pomUrl) {
+    return new GitHubPackageSource(packagesUrl, pomUrl, getAuthorization(), ResilientHttpClient.forLookups(httpClient),
+        null);
+  }
+
+  private static String getAuthorization() {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    String githubUser = properties.getProperty(GITHUB_USER, "");
+    String githubToken = properties.getProperty(GITHUB_TOKEN, "");
+    // Base64 Basic Auth token
+    return BASIC_AUTH_TOKEN + Base64.getEncoder().encodeToString((githubUser + ":" + githubToken).getBytes());
+  }
+
+  @Override
+  public String getPackagePageLocation(int page) {
+    return packagesUrl + PACKAGES_PAGE_QUERY + page;
+  }
+
+  @Override
+  public ListingPage<RepositoryPackage> fetchPackages(String location) throws IOException {
+    return sendHttpRequest(location, true,
+        (body, headers) -> new ListingPage<>(GitHubApiParser.readPackages(body), LinkHeader.getNextUrl(headers)));
+  }
+
+  @Override
+  public String getVersionsLocation(String packageName) {
+    return getVersionsLocation(packageName, VERSION_PAGE_SIZE);
+  }
+
+  private String getVersionsLocation(String packageName, int pageSize) {
+    return packagesUrl + String.format(VERSIONS_PATH, packageName, pageSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   * New versions are listed first, so the first page changes whenever the list does.
+   */
+  @Override
+  public ListingPage<RepositoryPackageVersion> fetchVersionPage(String packageName, int pageSize)
+      throws IOException {
+    return sendHttpRequest(getVersionsLocation(packageName, pageSize), pageSize == VERSION_PAGE_SIZE,
+        GitHubPackageSource::readVersionPage);
+  }
+
+  @Override
+  public ListingPage<RepositoryPackageVersion> fetchNextVersionPage(String location) throws IOException {
+    return sendHttpRequest(location, false, GitHubPackageSource::readVersionPage);
+  }
+
+  private static ListingPage<RepositoryPackageVersion> readVersionPage(InputStream body, HttpHeaders headers)
+      throws IOException {
+    return new ListingPage<>(GitHubApiParser.readVersions(body), LinkHeader.getNextUrl(headers));
+  }
+
+  @Override
+  public String getPomLocation(String group, String artifact, String version) {
+    return pomUrl + group.replace(".", "/") + "/" + artifact.replace(".", "/") + "/" + version + "/"
+        + artifact + "-" + version + ".pom";
+  }
+
+  /**
+   * {@inheritDoc}
+   * The registry answers with a redirect to the storage of the file, which is followed once.
+   */
+  @Override
+  public InputStream openPom(String group, String artifact, String version) throws IOException {
+    HttpResponse<InputStream> response = send(newRequest(getPomLocation(group, artifact, version)).build());
+    if (response.statusCode() == HTTP_FOUND) {
+      response.body().close();
+      String newUrl = response.headers()
+          .firstValue(LOCATION_HEADER)
+          .orElseThrow(() -> new OBException("Redirect URL not found in the response"));
+      response = send(newRequest(newUrl).build());
+    }
+    if (response.statusCode() == HTTP_OK) {
+      return ContentEncoding.decode(SyncMetrics.countBytes(response.body()), response.headers());
+    }
+    String errorMessage = String.format(OBMessageUtils.messageBD("ETDEP_Redirect_HTTP_Request_Failed"),
+        response.statusCode(), readErrorBody(response));
+    log.error(errorMessage);
+    throw new HttpStatusException(response.statusCode(), errorMessage);
+  }
+
+  /**
+   * Sends a GET request. A conditional request uses the validators stored for the URL in previous syncs,
+   * and the validators of its successful response are staged.
+   * The body is streamed to the reader, so it is never held in memory as a whole.
+   *
+   * @return the parsed body of the response, or null if the resource has not been modified
+   */
+  private <T> T sendHttpRequest(String url, boolean conditional, BodyReader<T> bodyReader) throws IOException {
+    boolean useValidators = conditional && validatorCache != null;
+    HttpRequest.Builder requestBuilder = newRequest(url);
+    if (useValidators) {
+      validatorCache.addConditionalHeaders(url, requestBuilder);
+    }
+    HttpResponse<InputStream> response = send(requestBuilder.build());
+    if (response.statusCode() == HTTP_NOT_MODIFIED) {
+      response.body().close();
+      return null;
+    }
+    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+      log.error("HTTP Request failed with status code: " + response.statusCode() + " and body: "
+          + readErrorBody(response));
+      throw new HttpStatusException(response.statusCode(),
+          "HTTP Request failed with status code: " + response.statusCode());
+    }
+    try (InputStream body = ContentEncoding.decode(SyncMetrics.countBytes(response.body()), response.headers())) {
+      T result = bodyReader.read(body, response.headers());
+      if (useValidators) {
+        validatorCache.stage(url, response.headers());
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Reads the body of an error response, to be logged.
+   *
+   * @return the body, or an empty string if it cannot be read
+   */
+  private static String readErrorBody(HttpResponse<InputStream> response) {
+    try (InputStream body = ContentEncoding.decode(response.body(), response.headers())) {
+      return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  private HttpRequest.Builder newRequest(String url) {
+    return ContentEncoding.accept(HttpRequest.newBuilder()
+        .uri(URI.create(url))
+        .header(AUTHORIZATION_HEADER, authorization)
+        .version(HttpClient.Version.HTTP_2)
+        .GET());
+  }
+
+  private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+    try {
+      return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+    }
+  }
+}
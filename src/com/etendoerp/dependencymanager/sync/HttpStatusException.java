@@ -0,0 +1,24 @@
+package com.etendoerp.dependencymanager.sync;
+
+import org.openbravo.base.exception.OBException;
+
+/**
+ * Thrown when a package repository answers a request with an error status.
+ */
+public class HttpStatusException extends OBException {
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  public HttpStatusException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * @return the status of the response
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
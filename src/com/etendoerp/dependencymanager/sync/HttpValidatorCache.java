@@ -0,0 +1,151 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Persistent cache of the HTTP validators ({@code ETag} and {@code Last-Modified}) returned by the
+ * repository API, used to send conditional requests on the next synchronization.
+ * <p>
+ * Validators received during a run are kept as pending until the caller confirms that the response
+ * has been fully applied to the database. Only confirmed validators are saved, so a response that
+ * failed to be processed is downloaded again on the next run instead of being answered with a 304.
+ * All the methods are thread safe.
+ */
+public class HttpValidatorCache {
+  private static final Logger log = LogManager.getLogger();
+  public static final String ETAG_HEADER = "ETag";
+  public static final String LAST_MODIFIED_HEADER = "Last-Modified";
+  public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+  public static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+  private static final String CACHE_FILE_NAME = "http-validators.json";
+
+  private final Path file;
+  private final Map<String, Validator> validators;
+  private final Map<String, Validator> pendingValidators = new ConcurrentHashMap<>();
+
+  private HttpValidatorCache(Path file, Map<String, Validator> validators) {
+    this.file = file;
+    this.validators = new ConcurrentHashMap<>(validators);
+  }
+
+  /**
+   * Loads the validators stored in the sync cache directory.
+   *
+   * @return the loaded cache, empty if no validators have been stored yet
+   * @throws IOException
+   *     if the cache directory cannot be accessed
+   */
+  public static HttpValidatorCache load() throws IOException {
+    Path cacheFile = SyncFiles.getCacheDirectory().resolve(CACHE_FILE_NAME);
+    Map<String, Validator> stored = SyncFiles.readJson(cacheFile, new TypeReference<>() {
+    });
+    return new HttpValidatorCache(cacheFile, stored != null ? stored : new HashMap<>());
+  }
+
+  /**
+   * Adds the conditional headers for the given URL to the request, if validators are known for it.
+   *
+   * @param url
+   *     the requested URL
+   * @param builder
+   *     the builder of the request
+   */
+  public void addConditionalHeaders(String url, HttpRequest.Builder builder) {
+    Validator validator = validators.get(url);
+    if (validator == null) {
+      return;
+    }
+    if (validator.etag != null) {
+      builder.header(IF_NONE_MATCH_HEADER, validator.etag);
+    }
+    if (validator.lastModified != null) {
+      builder.header(IF_MODIFIED_SINCE_HEADER, validator.lastModified);
+    }
+  }
+
+  /**
+   * Keeps the validators of a successful response as pending until {@link #confirm(String)} is called.
+   *
+   * @param url
+   *     the requested URL
+   * @param headers
+   *     the headers of the response
+   */
+  public void stage(String url, HttpHeaders headers) {
+    String etag = headers.firstValue(ETAG_HEADER).orElse(null);
+    String lastModified = headers.firstValue(LAST_MODIFIED_HEADER).orElse(null);
+    if (etag != null || lastModified != null) {
+      pendingValidators.put(url, new Validator(etag, lastModified));
+    }
+  }
+
+  /**
+   * Marks the response of the given URL as processed, so its validators are saved.
+   *
+   * @param url
+   *     the requested URL
+   */
+  public void confirm(String url) {
+    Validator validator = pendingValidators.remove(url);
+    if (validator != null) {
+      validators.put(url, validator);
+    }
+  }
+
+  /**
+   * Discards the pending validators of the given URL, for example because its response was empty and
+   * must always be checked again.
+   *
+   * @param url
+   *     the requested URL
+   */
+  public void discard(String url) {
+    pendingValidators.remove(url);
+  }
+
+  /**
+   * Removes every stored validator, forcing full downloads on the next requests.
+   */
+  public void clear() {
+    validators.clear();
+    pendingValidators.clear();
+  }
+
+  /**
+   * Saves the confirmed validators to the sync cache directory.
+   */
+  public void save() {
+    try {
+      SyncFiles.writeJson(file, new HashMap<>(validators));
+    } catch (IOException e) {
+      log.error("Failed to save HTTP validators to {}", file, e);
+    }
+  }
+
+  /**
+   * Validators of a single URL.
+   */
+  public static class Validator {
+    public String etag;
+    public String lastModified;
+
+    public Validator() {
+    }
+
+    public Validator(String etag, String lastModified) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+}
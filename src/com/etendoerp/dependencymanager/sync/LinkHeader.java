@@ -0,0 +1,40 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.net.http.HttpHeaders;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the pagination links of the {@code Link} header (RFC 8288) returned by paginated APIs, such as
+ * {@code <https://api.github.com/...&page=2>; rel="next", <https://api.github.com/...&page=5>; rel="last"}.
+ */
+public class LinkHeader {
+  public static final String LINK_HEADER = "Link";
+  private static final String NEXT_RELATION = "next";
+  private static final Pattern LINK_VALUE = Pattern.compile("<([^>]*)>\\s*((?:;[^,<]*)*)");
+  private static final Pattern REL_PARAMETER = Pattern.compile(";\\s*rel\\s*=\\s*\"?([^\";]*)\"?");
+
+  private LinkHeader() {
+  }
+
+  /**
+   * Returns the URL of the next page of a paginated response.
+   *
+   * @param headers
+   *     the headers of the response
+   * @return the URL of the next page, or null if the response is the last page
+   */
+  public static String getNextUrl(HttpHeaders headers) {
+    for (String value : headers.allValues(LINK_HEADER)) {
+      Matcher link = LINK_VALUE.matcher(value);
+      while (link.find()) {
+        Matcher rel = REL_PARAMETER.matcher(link.group(2));
+        if (rel.find() && Arrays.asList(rel.group(1).trim().split("\\s+")).contains(NEXT_RELATION)) {
+          return link.group(1);
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,14 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.util.List;
+
+/**
+ * A page of a paginated listing of a {@link PackageRepositorySource}.
+ *
+ * @param items
+ *     the items of the page
+ * @param nextLocation
+ *     the location of the next page, or null if this is the last one
+ */
+public record ListingPage<T>(List<T> items, String nextLocation) {
+}
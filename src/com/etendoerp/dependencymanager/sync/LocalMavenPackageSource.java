@@ -0,0 +1,159 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Package source backed by a Maven repository in the local file system, such as a mirror of the
+ * registry kept for environments without access to GitHub.
+ * <p>
+ * The repository follows the Maven layout, {@code group/path/artifact/version/artifact-version.pom}. Every
+ * artifact directory with at least one POM is a package, whose versions are the directories holding its
+ * POMs, newest first. The last modification time of the POMs of a package is used as its update time, so
+ * unchanged packages are skipped by the incremental sync. The whole repository is listed as a single page.
+ */
+public class LocalMavenPackageSource implements PackageRepositorySource {
+  private static final String POM_EXTENSION = ".pom";
+  private static final String PAGE_FRAGMENT = "#page=";
+
+  private final Path root;
+
+  /**
+   * @param root
+   *     the root directory of the Maven repository
+   */
+  public LocalMavenPackageSource(Path root) {
+    this.root = root.toAbsolutePath().normalize();
+  }
+
+  @Override
+  public String getPackagePageLocation(int page) {
+    return page <= 1 ? root.toString() : root + PAGE_FRAGMENT + page;
+  }
+
+  @Override
+  public ListingPage<RepositoryPackage> fetchPackages(String location) throws IOException {
+    List<RepositoryPackage> packages = new ArrayList<>();
+    if (!root.toString().equals(location)) {
+      return new ListingPage<>(packages, null);
+    }
+    Map<Path, FileTime> artifactUpdates = new TreeMap<>();
+    try (Stream<Path> files = Files.walk(root)) {
+      files.filter(this::isPom).forEach(pom -> artifactUpdates.merge(pom.getParent().getParent(),
+          getLastModifiedTime(pom), (a, b) -> a.compareTo(b) >= 0 ? a : b));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    for (Map.Entry<Path, FileTime> artifact : artifactUpdates.entrySet()) {
+      String name = root.relativize(artifact.getKey()).toString().replace(artifact.getKey().getFileSystem()
+          .getSeparator(), ".");
+      packages.add(new RepositoryPackage(name, artifact.getValue().toInstant().toString(), null));
+    }
+    return new ListingPage<>(packages, null);
+  }
+
+  @Override
+  public String getVersionsLocation(String packageName) {
+    return getArtifactDirectory(packageName).toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   * A local repository is not paginated, so the page has every version.
+   */
+  @Override
+  public ListingPage<RepositoryPackageVersion> fetchVersionPage(String packageName, int pageSize)
+      throws IOException {
+    return new ListingPage<>(fetchVersions(packageName), null);
+  }
+
+  @Override
+  public ListingPage<RepositoryPackageVersion> fetchNextVersionPage(String location) {
+    throw new UnsupportedOperationException("The versions of a local repository are listed in a single page");
+  }
+
+  @Override
+  public List<RepositoryPackageVersion> fetchVersions(String packageName) throws IOException {
+    Path artifactDirectory = getArtifactDirectory(packageName);
+    if (!Files.isDirectory(artifactDirectory)) {
+      throw new NoSuchFileException(artifactDirectory.toString());
+    }
+    List<Path> versionDirectories = new ArrayList<>();
+    try (Stream<Path> children = Files.list(artifactDirectory)) {
+      children.filter(directory -> Files.isRegularFile(getPom(directory))).forEach(versionDirectories::add);
+    }
+    try {
+      versionDirectories.sort(Comparator.comparing((Path directory) -> getLastModifiedTime(getPom(directory)))
+          .reversed());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    List<RepositoryPackageVersion> versions = new ArrayList<>(versionDirectories.size());
+    for (Path versionDirectory : versionDirectories) {
+      versions.add(new RepositoryPackageVersion(versionDirectory.getFileName().toString()));
+    }
+    return versions;
+  }
+
+  @Override
+  public String getPomLocation(String group, String artifact, String version) {
+    return resolve(group).resolve(artifact).resolve(version).resolve(artifact + "-" + version + POM_EXTENSION)
+        .toString();
+  }
+
+  @Override
+  public InputStream openPom(String group, String artifact, String version) throws IOException {
+    return Files.newInputStream(Path.of(getPomLocation(group, artifact, version)));
+  }
+
+  /**
+   * The name of a package is its group and artifact joined by a dot, and the group of the packages
+   * has two parts, as in the GitHub registry.
+   */
+  private Path getArtifactDirectory(String packageName) {
+    String[] parts = packageName.split("\\.", 3);
+    return parts.length < 3 ? resolve(packageName) : resolve(parts[0] + "." + parts[1]).resolve(parts[2]);
+  }
+
+  private Path resolve(String dottedPath) {
+    Path path = root;
+    for (String part : dottedPath.split("\\.")) {
+      path = path.resolve(part);
+    }
+    return path;
+  }
+
+  /**
+   * @return the POM of a version directory, {@code artifact/version/artifact-version.pom}
+   */
+  private static Path getPom(Path versionDirectory) {
+    String artifact = versionDirectory.getParent().getFileName().toString();
+    return versionDirectory.resolve(artifact + "-" + versionDirectory.getFileName() + POM_EXTENSION);
+  }
+
+  private boolean isPom(Path file) {
+    Path versionDirectory = file.getParent();
+    return file.getFileName().toString().endsWith(POM_EXTENSION) && versionDirectory != null
+        && versionDirectory.getParent() != null && !versionDirectory.getParent().equals(root)
+        && file.equals(getPom(versionDirectory)) && Files.isRegularFile(file);
+  }
+
+  private static FileTime getLastModifiedTime(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling latency and error statistics of a mirror, used by {@link MirroredPackageSource} to rank its mirrors.
+ * <p>
+ * Both are exponentially weighted moving averages, so recent requests weigh more than old ones and a mirror
+ * that recovers is preferred again after a few successful requests. A mirror is unhealthy while more than half
+ * of its recent requests failed. There is a single instance per mirror, shared by every caller in the JVM.
+ */
+public class MirrorStats {
+  private static final double SMOOTHING = 0.2;
+  private static final double MAX_HEALTHY_ERROR_RATE = 0.5;
+  private static final Map<String, MirrorStats> stats = new ConcurrentHashMap<>();
+
+  private final String mirror;
+  private double latencyMillis = -1;
+  private double errorRate;
+  private long requests;
+
+  MirrorStats(String mirror) {
+    this.mirror = mirror;
+  }
+
+  /**
+   * @return the shared statistics of the mirror
+   */
+  public static MirrorStats forMirror(String mirror) {
+    return stats.computeIfAbsent(mirror, MirrorStats::new);
+  }
+
+  /**
+   * Records a request answered by the mirror, even if the answer was an error status of the resource.
+   *
+   * @param latencyMillis
+   *     the time until the response was received
+   */
+  public synchronized void recordResponse(long latencyMillis) {
+    this.latencyMillis = this.latencyMillis < 0 ? latencyMillis
+        : SMOOTHING * latencyMillis + (1 - SMOOTHING) * this.latencyMillis;
+    errorRate = (1 - SMOOTHING) * errorRate;
+    requests++;
+  }
+
+  /**
+   * Records a request that the mirror failed to answer.
+   */
+  public synchronized void recordFailure() {
+    errorRate = SMOOTHING + (1 - SMOOTHING) * errorRate;
+    requests++;
+  }
+
+  /**
+   * @return the average latency in milliseconds, or a negative value if no request has been answered yet
+   */
+  public synchronized double getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  /**
+   * @return the fraction of recent requests that failed
+   */
+  public synchronized double getErrorRate() {
+    return errorRate;
+  }
+
+  /**
+   * @return true unless most of the recent requests failed
+   */
+  public synchronized boolean isHealthy() {
+    return errorRate <= MAX_HEALTHY_ERROR_RATE;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s: %d requests, %.0f ms average latency, %.0f%% errors", mirror, requests,
+        Math.max(0, latencyMillis), errorRate * 100);
+  }
+}
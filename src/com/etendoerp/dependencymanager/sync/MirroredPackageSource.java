@@ -0,0 +1,453 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Package source that spreads the requests over an ordered list of mirrors of the GitHub packages API and
+ * of the Maven registry.
+ * <p>
+ * Each request goes to the fastest healthy mirror according to its {@link MirrorStats}. Mirrors without
+ * statistics keep their configured order, so the first one is used until the others have been measured.
+ * If the request has not been answered after the delay of the {@value #HEDGE_DELAY_PROPERTY} property, in
+ * milliseconds, a duplicate is sent to the next mirror and the first answer wins. If a mirror fails, the
+ * request is sent to the next one, and it only fails once every mirror has failed. Only single requests
+ * are hedged: the next pages of a version listing are requested to the mirror that answered the first one.
+ * The requests run on a shared pool of twice the {@value ConcurrentFetcher#PARALLELISM_PROPERTY} threads,
+ * which is enough for a request and its duplicate from each fetch worker. As many requests can wait for a
+ * free thread, and beyond that a request is sent by the thread that makes it.
+ * <p>
+ * The package list is always read from the first API mirror, because the locations of its pages belong to
+ * that mirror. Locations, the keys of the stored failures, are the ones of the first mirror of each list,
+ * so they do not change with the mirror that answers. Validators only hold for the mirror that sent them,
+ * so every API mirror sends and stages the ones of its own locations, and a duplicate request never
+ * overwrites the validators of another mirror.
+ * <p>
+ * Only the GitHub packages API is synced from by default, other mirrors such as
+ * {@value GitHubPackageSource#ETENDO_PACKAGES_URL} are used once added to the
+ * {@value #SYNC_API_MIRRORS_PROPERTY} property.
+ */
+public class MirroredPackageSource implements PackageRepositorySource {
+  private static final Logger log = LogManager.getLogger();
+  public static final String SYNC_API_MIRRORS_PROPERTY = "etdep.sync.mirrors.api";
+  public static final String LOOKUP_API_MIRRORS_PROPERTY = "etdep.lookup.mirrors.api";
+  public static final String MAVEN_MIRRORS_PROPERTY = "etdep.sync.mirrors.maven";
+  public static final String HEDGE_DELAY_PROPERTY = "etdep.sync.mirrors.hedge.delay";
+  public static final String DEFAULT_SYNC_API_MIRRORS = GitHubPackageSource.DEFAULT_PACKAGES_URL;
+  public static final String DEFAULT_LOOKUP_API_MIRRORS = GitHubPackageSource.ETENDO_PACKAGES_URL + ","
+      + GitHubPackageSource.DEFAULT_PACKAGES_URL;
+  private static final long DEFAULT_HEDGE_DELAY_MILLIS = 1000;
+  private static final long MIRROR_THREAD_KEEP_ALIVE_SECONDS = 60;
+  private static ExecutorService executor;
+
+  private final List<Mirror> apiMirrors;
+  private final List<Mirror> mavenMirrors;
+  private final long hedgeDelayMillis;
+
+  /**
+   * A mirror of the source.
+   *
+   * @param name
+   *     the name of the mirror, usually its URL, which identifies its statistics
+   * @param source
+   *     the source that sends the requests to the mirror
+   */
+  public record Mirror(String name, PackageRepositorySource source) {
+  }
+
+  /**
+   * A request that can be sent to any mirror.
+   */
+  @FunctionalInterface
+  private interface MirrorCall<T> {
+    T call(PackageRepositorySource source) throws IOException;
+  }
+
+  /**
+   * Creates the source of a mirror.
+   */
+  @FunctionalInterface
+  private interface MirrorFactory {
+    PackageRepositorySource create(String apiUrl, String mavenUrl);
+  }
+
+  /**
+   * Creates a source.
+   *
+   * @param apiMirrors
+   *     the mirrors of the packages API, in order of preference, at least one
+   * @param mavenMirrors
+   *     the mirrors of the Maven registry, in order of preference, at least one
+   * @param hedgeDelayMillis
+   *     the time to wait for a mirror before sending a duplicate request to the next one, 0 to never send duplicates
+   */
+  public MirroredPackageSource(List<Mirror> apiMirrors, List<Mirror> mavenMirrors, long hedgeDelayMillis) {
+    if (apiMirrors.isEmpty() || mavenMirrors.isEmpty()) {
+      throw new OBException("At least one mirror of the packages API and of the Maven registry is required");
+    }
+    this.apiMirrors = new ArrayList<>(apiMirrors);
+    this.mavenMirrors = new ArrayList<>(mavenMirrors);
+    this.hedgeDelayMillis = hedgeDelayMillis;
+  }
+
+  /**
+   * Creates a source with the mirrors configured in Openbravo.properties, as comma separated lists of URLs.
+   * The Maven registry mirrors are read from the {@value #MAVEN_MIRRORS_PROPERTY} property.
+   *
+   * @param apiMirrorsProperty
+   *     the property with the mirrors of the packages API
+   * @param defaultApiMirrors
+   *     the mirrors of the packages API used if the property is not set
+   * @param validatorCache
+   *     the validators used for conditional requests, or null to always request full responses
+   * @return the source
+   */
+  public static MirroredPackageSource fromProperties(String apiMirrorsProperty, String defaultApiMirrors,
+      HttpValidatorCache validatorCache) {
+    return fromProperties(apiMirrorsProperty, defaultApiMirrors,
+        (apiUrl, mavenUrl) -> GitHubPackageSource.fromProperties(apiUrl, mavenUrl, validatorCache));
+  }
+
+  /**
+   * Creates a source for interactive lookups, with the API mirrors of the {@value #LOOKUP_API_MIRRORS_PROPERTY}
+   * property. Its requests fail instead of waiting long for an exhausted rate limit.
+   *
+   * @return the source
+   */
+  public static MirroredPackageSource forLookups() {
+    return fromProperties(LOOKUP_API_MIRRORS_PROPERTY, DEFAULT_LOOKUP_API_MIRRORS,
+        GitHubPackageSource::forLookups);
+  }
+
+  private static MirroredPackageSource fromProperties(String apiMirrorsProperty, String defaultApiMirrors,
+      MirrorFactory mirrorFactory) {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    List<String> apiUrls = splitUrls(properties.getProperty(apiMirrorsProperty, defaultApiMirrors));
+    List<String> mavenUrls = splitUrls(properties.getProperty(MAVEN_MIRRORS_PROPERTY,
+        GitHubPackageSource.DEFAULT_POM_URL));
+    List<Mirror> apiMirrors = new ArrayList<>();
+    for (String apiUrl : apiUrls) {
+      apiMirrors.add(new Mirror(apiUrl, mirrorFactory.create(apiUrl,
+          mavenUrls.isEmpty() ? GitHubPackageSource.DEFAULT_POM_URL : mavenUrls.get(0))));
+    }
+    List<Mirror> mavenMirrors = new ArrayList<>();
+    for (String mavenUrl : mavenUrls) {
+      String apiUrl = apiUrls.isEmpty() ? GitHubPackageSource.DEFAULT_PACKAGES_URL : apiUrls.get(0);
+      mavenMirrors.add(new Mirror(mavenUrl, mirrorFactory.create(apiUrl, mavenUrl)));
+    }
+    return new MirroredPackageSource(apiMirrors, mavenMirrors,
+        NumberUtils.toLong(properties.getProperty(HEDGE_DELAY_PROPERTY), DEFAULT_HEDGE_DELAY_MILLIS));
+  }
+
+  private static List<String> splitUrls(String value) {
+    List<String> urls = new ArrayList<>();
+    for (String url : StringUtils.split(StringUtils.defaultString(value), ',')) {
+      if (StringUtils.isNotBlank(url)) {
+        urls.add(url.trim());
+      }
+    }
+    return urls;
+  }
+
+  @Override
+  public String getPackagePageLocation(int page) {
+    return apiMirrors.get(0).source().getPackagePageLocation(page);
+  }
+
+  @Override
+  public ListingPage<RepositoryPackage> fetchPackages(String location) throws IOException {
+    return apiMirrors.get(0).source().fetchPackages(location);
+  }
+
+  @Override
+  public String getVersionsLocation(String packageName) {
+    return apiMirrors.get(0).source().getVersionsLocation(packageName);
+  }
+
+  /**
+   * {@inheritDoc}
+   * The listing is read from any API mirror, each one at its own location.
+   */
+  @Override
+  public List<String> getVersionsLocations(String packageName) {
+    List<String> locations = new ArrayList<>(apiMirrors.size());
+    for (Mirror mirror : apiMirrors) {
+      locations.add(mirror.source().getVersionsLocation(packageName));
+    }
+    return locations;
+  }
+
+  @Override
+  public ListingPage<RepositoryPackageVersion> fetchVersionPage(String packageName, int pageSize)
+      throws IOException {
+    return call(apiMirrors, source -> source.fetchVersionPage(packageName, pageSize), page -> {
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   * The page is requested to the API mirror its location belongs to, or to the first one if none matches.
+   */
+  @Override
+  public ListingPage<RepositoryPackageVersion> fetchNextVersionPage(String location) throws IOException {
+    for (Mirror mirror : apiMirrors) {
+      if (location.startsWith(mirror.name())) {
+        return mirror.source().fetchNextVersionPage(location);
+      }
+    }
+    return apiMirrors.get(0).source().fetchNextVersionPage(location);
+  }
+
+  /**
+   * {@inheritDoc}
+   * Only the first page is hedged, the next ones are requested to the mirror that answered it.
+   */
+  @Override
+  public List<RepositoryPackageVersion> fetchVersions(String packageName) throws IOException {
+    SourcePage firstPage = call(apiMirrors, source -> {
+      ListingPage<RepositoryPackageVersion> page = source.fetchVersionPage(packageName, VERSION_PAGE_SIZE);
+      return page != null ? new SourcePage(source, page) : null;
+    }, page -> {
+    });
+    if (firstPage == null) {
+      return null;
+    }
+    return PackageRepositorySource.readVersionPages(firstPage.source(), firstPage.page());
+  }
+
+  @Override
+  public String getPomLocation(String group, String artifact, String version) {
+    return mavenMirrors.get(0).source().getPomLocation(group, artifact, version);
+  }
+
+  @Override
+  public InputStream openPom(String group, String artifact, String version) throws IOException {
+    return call(mavenMirrors, source -> source.openPom(group, artifact, version),
+        MirroredPackageSource::closeQuietly);
+  }
+
+  /**
+   * @return the statistics of every mirror of this source
+   */
+  public List<MirrorStats> getMirrorStats() {
+    List<MirrorStats> mirrorStats = new ArrayList<>();
+    for (Mirror mirror : apiMirrors) {
+      mirrorStats.add(MirrorStats.forMirror(mirror.name()));
+    }
+    for (Mirror mirror : mavenMirrors) {
+      mirrorStats.add(MirrorStats.forMirror(mirror.name()));
+    }
+    return mirrorStats;
+  }
+
+  private <T> T call(List<Mirror> mirrors, MirrorCall<T> call, Consumer<T> discard) throws IOException {
+    return new HedgedCall<>(rank(mirrors), call, discard).run(hedgeDelayMillis);
+  }
+
+  /**
+   * Sorts the mirrors putting the healthy ones first, and then the fastest ones. Mirrors without a measured
+   * latency go after the measured ones, in their configured order.
+   */
+  private static List<Mirror> rank(List<Mirror> mirrors) {
+    // The statistics change concurrently, so they are read once before sorting
+    List<RankedMirror> ranked = new ArrayList<>(mirrors.size());
+    for (Mirror mirror : mirrors) {
+      MirrorStats stats = MirrorStats.forMirror(mirror.name());
+      double latency = stats.getLatencyMillis();
+      ranked.add(new RankedMirror(mirror, stats.isHealthy(), latency < 0 ? Double.MAX_VALUE : latency));
+    }
+    ranked.sort(Comparator.comparing((RankedMirror entry) -> !entry.healthy())
+        .thenComparingDouble(RankedMirror::latencyMillis));
+    List<Mirror> result = new ArrayList<>(ranked.size());
+    for (RankedMirror entry : ranked) {
+      result.add(entry.mirror());
+    }
+    return result;
+  }
+
+  private record RankedMirror(Mirror mirror, boolean healthy, double latencyMillis) {
+  }
+
+  /**
+   * A page of versions and the mirror source that answered it.
+   */
+  private record SourcePage(PackageRepositorySource source, ListingPage<RepositoryPackageVersion> page) {
+  }
+
+  private static void closeQuietly(InputStream stream) {
+    try {
+      stream.close();
+    } catch (IOException e) {
+      log.debug("Failed to close the response of a discarded mirror request", e);
+    }
+  }
+
+  /**
+   * @return the pool of the mirror requests, created on first use with twice the configured parallelism
+   */
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = createExecutor(2 * ConcurrentFetcher.getConfiguredParallelism());
+    }
+    return executor;
+  }
+
+  private static ExecutorService createExecutor(int threads) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "etdep-sync-mirror-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    // A request that does not fit in the queue runs on the thread that sends it, which slows the callers down
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, MIRROR_THREAD_KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    // Idle threads are released between syncs
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * A request sent to the ranked mirrors, one after the other when they fail, and to a second one at the
+   * same time when the first is too slow.
+   */
+  private static final class HedgedCall<T> {
+    private final List<Mirror> candidates;
+    private final MirrorCall<T> call;
+    private final Consumer<T> discard;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private int launched;
+    private int running;
+    private Exception firstError;
+
+    private HedgedCall(List<Mirror> candidates, MirrorCall<T> call, Consumer<T> discard) {
+      this.candidates = candidates;
+      this.call = call;
+      this.discard = discard;
+    }
+
+    private T run(long hedgeDelayMillis) throws IOException {
+      launch(reserveNext());
+      try {
+        if (hedgeDelayMillis > 0 && candidates.size() > 1) {
+          try {
+            return result.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+          } catch (TimeoutException e) {
+            launch(reserveHedge());
+          }
+        }
+        return result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the mirrors");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+
+    /**
+     * @return the mirror to send a duplicate request to, or null if the request is done or no mirror is left
+     */
+    private synchronized Mirror reserveHedge() {
+      if (result.isDone() || launched >= candidates.size()) {
+        return null;
+      }
+      log.debug("Sending a hedged request to {}", candidates.get(launched).name());
+      return reserveNext();
+    }
+
+    private synchronized Mirror reserveNext() {
+      running++;
+      return candidates.get(launched++);
+    }
+
+    /**
+     * Sends the request to a mirror. It is called without holding the lock of the call, because the request
+     * may run on the current thread when the pool is full.
+     */
+    private void launch(Mirror mirror) {
+      if (mirror != null) {
+        getExecutor().execute(SyncMetrics.bindToCurrentRun(() -> attempt(mirror)));
+      }
+    }
+
+    private void attempt(Mirror mirror) {
+      MirrorStats stats = MirrorStats.forMirror(mirror.name());
+      long start = System.nanoTime();
+      try {
+        T value = call.call(mirror.source());
+        stats.recordResponse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        succeed(value);
+      } catch (HttpStatusException e) {
+        // A client error is an answer about the resource, the mirror itself is working
+        if (e.getStatusCode() < 500) {
+          stats.recordResponse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+          stats.recordFailure();
+        }
+        launch(fail(mirror, e));
+      } catch (NoSuchFileException e) {
+        stats.recordResponse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        launch(fail(mirror, e));
+      } catch (Exception e) {
+        stats.recordFailure();
+        launch(fail(mirror, e));
+      }
+    }
+
+    private synchronized void succeed(T value) {
+      running--;
+      if (!result.complete(value) && value != null) {
+        discard.accept(value);
+      }
+    }
+
+    /**
+     * @return the next mirror to send the request to, or null if another one is still running or none is left
+     */
+    private synchronized Mirror fail(Mirror mirror, Exception e) {
+      running--;
+      if (firstError == null) {
+        firstError = e;
+      }
+      if (result.isDone() || running > 0) {
+        return null;
+      }
+      if (launched < candidates.size()) {
+        log.warn("Mirror {} failed: {}, trying {}", mirror.name(), e.getMessage(), candidates.get(launched).name());
+        return reserveNext();
+      }
+      result.completeExceptionally(firstError);
+      return null;
+    }
+  }
+}
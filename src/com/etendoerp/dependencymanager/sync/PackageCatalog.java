@@ -0,0 +1,76 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Revision of the published packages catalog, stored as {@value #CATALOG_FILE_NAME} next to the delta files.
+ * <p>
+ * Every time the published packages dataset changes, the revision is increased and a delta file named
+ * after it is written with the rows changed since the previous revision. Deltas are only kept since
+ * {@link #oldestRevision}, so a consumer stored at an older revision, or at none, imports the full snapshot
+ * instead. The hash of the snapshot lets a consumer that imported it know the revision it is at.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PackageCatalog {
+  public static final String CATALOG_FILE_NAME = "catalog.json";
+  private static final String DELTA_FILE_PREFIX = "delta-";
+  private static final String DELTA_FILE_SUFFIX = ".xml";
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * The latest revision.
+   */
+  public long revision;
+  /**
+   * The oldest revision the deltas can be applied from: there is a delta for every later revision.
+   */
+  public long oldestRevision;
+  /**
+   * The SHA-256 of the snapshot of the latest revision.
+   */
+  public String snapshotSha256;
+
+  public PackageCatalog() {
+  }
+
+  public PackageCatalog(long revision, long oldestRevision, String snapshotSha256) {
+    this.revision = revision;
+    this.oldestRevision = oldestRevision;
+    this.snapshotSha256 = snapshotSha256;
+  }
+
+  /**
+   * Reads a catalog.
+   *
+   * @param in
+   *     the JSON content of the catalog, it is not closed
+   * @return the catalog
+   * @throws IOException
+   *     if the content is not a valid catalog
+   */
+  public static PackageCatalog read(InputStream in) throws IOException {
+    return objectMapper.readValue(in, PackageCatalog.class);
+  }
+
+  /**
+   * @return the name of the file with the changes from the previous revision to the given one
+   */
+  public static String deltaFileName(long revision) {
+    return DELTA_FILE_PREFIX + revision + DELTA_FILE_SUFFIX;
+  }
+
+  /**
+   * Checks if a consumer can reach the latest revision by applying deltas.
+   *
+   * @param currentRevision
+   *     the revision of the consumer, null if it is not known
+   * @return true if there is a delta for every revision after the current one, and at least one of them
+   */
+  public boolean hasDeltasFrom(Long currentRevision) {
+    return currentRevision != null && currentRevision >= oldestRevision && currentRevision < revision;
+  }
+}
@@ -0,0 +1,376 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.BooleanUtils;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.dependencymanager.util.UpdateLocalPackagesUtil;
+
+/**
+ * Imports the rows of the packages dataset with set-based statements instead of one select and one
+ * update per row.
+ * <p>
+ * Rows are first written with JDBC batches to temporary staging tables, in any order. Then each table is
+ * upserted from its staging table with a single {@code INSERT ... ON CONFLICT DO UPDATE}, in foreign key
+ * order: packages, versions and dependencies. Existing rows whose values have not changed are not written.
+ * References are resolved by the database at that point, so versions and dependencies whose parent does
+ * not exist are skipped, and a dependency on a version that does not exist is left without it. Rows removed
+ * by a catalog delta are deleted in the same apply, with the versions of a removed package, and the
+ * dependencies on a removed version are left without it. Statements run on the connection of the current
+ * OBDal session, so they take part in its transaction. The staging tables are dropped once applied, or when
+ * the transaction ends. The statements use the PostgreSQL dialect.
+ */
+public class PackageDatasetImporter {
+  private static final int BATCH_SIZE = 500;
+  private static final String STAGE_PACKAGE = "etdep_stage_package";
+  private static final String STAGE_PACKAGE_VERSION = "etdep_stage_package_version";
+  private static final String STAGE_PACKAGE_DEPENDENCY = "etdep_stage_package_dep";
+  private static final String STAGE_DELETED = "etdep_stage_deleted";
+  private static final String DROP_STAGING_TABLES = "DROP TABLE IF EXISTS " + STAGE_PACKAGE + ", "
+      + STAGE_PACKAGE_VERSION + ", " + STAGE_PACKAGE_DEPENDENCY + ", " + STAGE_DELETED;
+  private static final String[] CREATE_STAGING_TABLES = {
+      "CREATE TEMPORARY TABLE " + STAGE_PACKAGE + " (id VARCHAR(32) PRIMARY KEY, isactive CHAR(1),"
+          + " depgroup VARCHAR(255), artifact VARCHAR(255), bundle CHAR(1)) ON COMMIT DROP",
+      "CREATE TEMPORARY TABLE " + STAGE_PACKAGE_VERSION + " (id VARCHAR(32) PRIMARY KEY, package_id VARCHAR(32),"
+          + " isactive CHAR(1), version VARCHAR(255), from_core VARCHAR(255), latest_core VARCHAR(255))"
+          + " ON COMMIT DROP",
+      "CREATE TEMPORARY TABLE " + STAGE_PACKAGE_DEPENDENCY + " (id VARCHAR(32) PRIMARY KEY,"
+          + " package_version_id VARCHAR(32), isactive CHAR(1), depgroup VARCHAR(255), artifact VARCHAR(255),"
+          + " version VARCHAR(255), dependency_version_id VARCHAR(32), isexternaldependency CHAR(1))"
+          + " ON COMMIT DROP",
+      "CREATE TEMPORARY TABLE " + STAGE_DELETED + " (entity VARCHAR(60), id VARCHAR(32), PRIMARY KEY (entity, id))"
+          + " ON COMMIT DROP" };
+  // A row repeated in the dataset keeps its last values, as if it had been saved twice
+  private static final String INSERT_STAGE_PACKAGE = "INSERT INTO " + STAGE_PACKAGE
+      + " VALUES (?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET isactive = EXCLUDED.isactive,"
+      + " depgroup = EXCLUDED.depgroup, artifact = EXCLUDED.artifact, bundle = EXCLUDED.bundle";
+  private static final String INSERT_STAGE_PACKAGE_VERSION = "INSERT INTO " + STAGE_PACKAGE_VERSION
+      + " VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET package_id = EXCLUDED.package_id,"
+      + " isactive = EXCLUDED.isactive, version = EXCLUDED.version, from_core = EXCLUDED.from_core,"
+      + " latest_core = EXCLUDED.latest_core";
+  private static final String INSERT_STAGE_PACKAGE_DEPENDENCY = "INSERT INTO " + STAGE_PACKAGE_DEPENDENCY
+      + " VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET"
+      + " package_version_id = EXCLUDED.package_version_id, isactive = EXCLUDED.isactive,"
+      + " depgroup = EXCLUDED.depgroup, artifact = EXCLUDED.artifact, version = EXCLUDED.version,"
+      + " dependency_version_id = EXCLUDED.dependency_version_id,"
+      + " isexternaldependency = EXCLUDED.isexternaldependency";
+  private static final String INSERT_STAGE_DELETED = "INSERT INTO " + STAGE_DELETED
+      + " VALUES (?, ?) ON CONFLICT DO NOTHING";
+  // The audit values are the parameters of every upsert: client, organization, created, createdby,
+  // updated and updatedby
+  private static final String AUDIT_COLUMNS = "ad_client_id, ad_org_id, created, createdby, updated, updatedby";
+  // Parameters in a select list are not typed by the insert, so they are cast to the type of their column
+  private static final String AUDIT_VALUES = "CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS TIMESTAMP),"
+      + " CAST(? AS VARCHAR), CAST(? AS TIMESTAMP), CAST(? AS VARCHAR)";
+  private static final String UPSERT_PACKAGE = buildUpsert("etdep_package", "etdep_package_id",
+      " FROM " + STAGE_PACKAGE + " s",
+      new String[] { "isactive", "depgroup", "artifact", "bundle" },
+      new String[] { "COALESCE(s.isactive, 'Y')", "s.depgroup", "s.artifact", "COALESCE(s.bundle, 'N')" });
+  private static final String UPSERT_PACKAGE_VERSION = buildUpsert("etdep_package_version",
+      "etdep_package_version_id",
+      " FROM " + STAGE_PACKAGE_VERSION + " s JOIN etdep_package p ON p.etdep_package_id = s.package_id",
+      new String[] { "etdep_package_id", "isactive", "version", "from_core", "latest_core" },
+      new String[] { "s.package_id", "COALESCE(s.isactive, 'Y')", "s.version", "s.from_core", "s.latest_core" });
+  private static final String UPSERT_PACKAGE_DEPENDENCY = buildUpsert("etdep_package_dep", "etdep_package_dep_id",
+      " FROM " + STAGE_PACKAGE_DEPENDENCY + " s"
+          + " JOIN etdep_package_version pv ON pv.etdep_package_version_id = s.package_version_id"
+          + " LEFT JOIN etdep_package_version dv ON dv.etdep_package_version_id = s.dependency_version_id",
+      new String[] { "etdep_package_version_id", "isactive", "depgroup", "artifact", "version",
+          "dependency_version_id", "isexternaldependency" },
+      new String[] { "s.package_version_id", "COALESCE(s.isactive, 'Y')", "s.depgroup", "s.artifact", "s.version",
+          "dv.etdep_package_version_id", "COALESCE(s.isexternaldependency, 'N')" });
+  private static final String DELETE_PACKAGE_DEPENDENCY = buildDelete("etdep_package_dep", "etdep_package_dep_id",
+      UpdateLocalPackagesUtil.ETDEP_PACKAGE_DEPENDENCY);
+  // The versions staged as deleted and every version of the packages staged as deleted
+  private static final String REMOVED_VERSIONS = "SELECT d.id FROM " + STAGE_DELETED + " d"
+      + " WHERE d.entity = '" + UpdateLocalPackagesUtil.ETDEP_PACKAGE_VERSION + "'"
+      + " UNION SELECT v.etdep_package_version_id FROM etdep_package_version v JOIN " + STAGE_DELETED + " d"
+      + " ON d.id = v.etdep_package_id WHERE d.entity = '" + UpdateLocalPackagesUtil.ETDEP_PACKAGE + "'";
+  private static final String CLEAR_DELETED_DEPENDENCY_VERSION = "UPDATE etdep_package_dep"
+      + " SET dependency_version_id = NULL, updated = ?, updatedby = ?"
+      + " WHERE dependency_version_id IN (" + REMOVED_VERSIONS + ")";
+  private static final String DELETE_DELETED_VERSION_DEPENDENCIES = "DELETE FROM etdep_package_dep"
+      + " WHERE etdep_package_version_id IN (" + REMOVED_VERSIONS + ")";
+  private static final String DELETE_PACKAGE_VERSION = "DELETE FROM etdep_package_version"
+      + " WHERE etdep_package_version_id IN (" + REMOVED_VERSIONS + ")";
+  private static final String DELETE_PACKAGE = buildDelete("etdep_package", "etdep_package_id",
+      UpdateLocalPackagesUtil.ETDEP_PACKAGE);
+
+  private final Connection connection;
+  private final List<Object[]> stagedPackages = new ArrayList<>();
+  private final List<Object[]> stagedVersions = new ArrayList<>();
+  private final List<Object[]> stagedDependencies = new ArrayList<>();
+  private final List<Object[]> stagedDeletions = new ArrayList<>();
+  private long insertedRows;
+  private long updatedRows;
+  private long unchangedRows;
+  private long deletedRows;
+
+  private PackageDatasetImporter(Connection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Builds the upsert of a table from the rows of its source.
+   * Existing rows are only updated if any of their columns differs, so unchanged rows are not written and
+   * keep their {@code updated} audit value. The statement returns a single row with the number of source
+   * rows, and of rows inserted and updated.
+   *
+   * @param table
+   *     the table to upsert
+   * @param keyColumn
+   *     the primary key of the table, taken from the {@code id} of the source
+   * @param source
+   *     the {@code FROM} clause of the source rows
+   * @param columns
+   *     the columns written, besides the key and the audit columns
+   * @param values
+   *     the expression of each column over the source
+   */
+  private static String buildUpsert(String table, String keyColumn, String source, String[] columns,
+      String[] values) {
+    StringBuilder updates = new StringBuilder();
+    StringBuilder current = new StringBuilder();
+    StringBuilder excluded = new StringBuilder();
+    for (String column : columns) {
+      String separator = updates.length() > 0 ? ", " : "";
+      updates.append(separator).append(column).append(" = EXCLUDED.").append(column);
+      current.append(separator).append(table).append('.').append(column);
+      excluded.append(separator).append("EXCLUDED.").append(column);
+    }
+    return "WITH upserted AS (INSERT INTO " + table + " (" + keyColumn + ", " + AUDIT_COLUMNS + ", "
+        + String.join(", ", columns) + ") SELECT s.id, " + AUDIT_VALUES + ", " + String.join(", ", values) + source
+        + " ON CONFLICT (" + keyColumn + ") DO UPDATE SET " + updates
+        + ", updated = EXCLUDED.updated, updatedby = EXCLUDED.updatedby"
+        + " WHERE (" + current + ") IS DISTINCT FROM (" + excluded + ")"
+        + " RETURNING (xmax = 0) AS inserted)"
+        + " SELECT (SELECT count(*)" + source + "), count(*) FILTER (WHERE inserted),"
+        + " count(*) FILTER (WHERE NOT inserted) FROM upserted";
+  }
+
+  /**
+   * Builds the delete of the rows of a table staged as deleted.
+   */
+  private static String buildDelete(String table, String keyColumn, String entityName) {
+    return "DELETE FROM " + table + " WHERE " + keyColumn + " IN (SELECT d.id FROM " + STAGE_DELETED + " d"
+        + " WHERE d.entity = '" + entityName + "')";
+  }
+
+  /**
+   * Starts an import, creating the staging tables in the transaction of the current OBDal session.
+   * Pending changes of the session are flushed first, so the upserts see them.
+   *
+   * @return the importer
+   * @throws OBException
+   *     if the staging tables cannot be created
+   */
+  public static PackageDatasetImporter begin() {
+    OBDal.getInstance().flush();
+    PackageDatasetImporter importer = new PackageDatasetImporter(OBDal.getInstance().getConnection(true));
+    try (Statement statement = importer.connection.createStatement()) {
+      // Tables left by an import that failed earlier in the same transaction are replaced
+      statement.execute(DROP_STAGING_TABLES);
+      for (String createStagingTable : CREATE_STAGING_TABLES) {
+        statement.execute(createStagingTable);
+      }
+    } catch (SQLException e) {
+      throw new OBException("Failed to create the staging tables of the packages dataset", e);
+    }
+    return importer;
+  }
+
+  /**
+   * Stages a row of the dataset, or the removal of a row written by the {@link CatalogDeltaWriter} in a delta.
+   * Rows of other entities are ignored.
+   *
+   * @param row
+   *     the row read from the dataset
+   * @return true if the row has been staged
+   * @throws OBException
+   *     if a batch of staged rows cannot be written
+   */
+  public boolean stage(PackageDatasetReader.DatasetRow row) {
+    switch (row.entityName()) {
+      case UpdateLocalPackagesUtil.ETDEP_PACKAGE:
+        stagedPackages.add(new Object[] { row.get(UpdateLocalPackagesUtil.ID),
+            toYesNo(row.get(UpdateLocalPackagesUtil.ACTIVE)), row.get(UpdateLocalPackagesUtil.GROUP),
+            row.get(UpdateLocalPackagesUtil.ARTIFACT), toYesNo(row.get(UpdateLocalPackagesUtil.ISBUNDLE)) });
+        writeStaged(INSERT_STAGE_PACKAGE, stagedPackages, BATCH_SIZE);
+        return true;
+      case UpdateLocalPackagesUtil.ETDEP_PACKAGE_VERSION:
+        stagedVersions.add(new Object[] { row.get(UpdateLocalPackagesUtil.ID),
+            row.get(UpdateLocalPackagesUtil.ETDEP_PACKAGE_TAG), toYesNo(row.get(UpdateLocalPackagesUtil.ACTIVE)),
+            row.get(UpdateLocalPackagesUtil.VERSION), row.get(UpdateLocalPackagesUtil.FROM_CORE),
+            row.get(UpdateLocalPackagesUtil.LATEST_CORE) });
+        writeStaged(INSERT_STAGE_PACKAGE_VERSION, stagedVersions, BATCH_SIZE);
+        return true;
+      case UpdateLocalPackagesUtil.ETDEP_PACKAGE_DEPENDENCY:
+        stagedDependencies.add(new Object[] { row.get(UpdateLocalPackagesUtil.ID),
+            row.get(UpdateLocalPackagesUtil.ETDEP_PACKAGE_VERSION_TAG),
+            toYesNo(row.get(UpdateLocalPackagesUtil.ACTIVE)), row.get(UpdateLocalPackagesUtil.GROUP),
+            row.get(UpdateLocalPackagesUtil.ARTIFACT), row.get(UpdateLocalPackagesUtil.VERSION),
+            row.get(UpdateLocalPackagesUtil.DEPENDENCY_VERSION),
+            toYesNo(row.get(UpdateLocalPackagesUtil.EXTERNAL_DEPENDENCY)) });
+        writeStaged(INSERT_STAGE_PACKAGE_DEPENDENCY, stagedDependencies, BATCH_SIZE);
+        return true;
+      case CatalogDeltaWriter.DELETED_ROW:
+        stagedDeletions.add(new Object[] { row.get(CatalogDeltaWriter.ENTITY), row.get(UpdateLocalPackagesUtil.ID) });
+        writeStaged(INSERT_STAGE_DELETED, stagedDeletions, BATCH_SIZE);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Writes the rows still pending to the staging tables, upserts every table from them and drops them.
+   * Dependencies staged as deleted are removed before the upserts, and versions and packages after them, so
+   * the dependencies updated to no longer reference a removed version do not block its removal. Any other
+   * dependency on a removed version, such as one written by the sync and not published, is left without it,
+   * and the remaining dependencies of a removed version are removed with it. The versions of a removed
+   * package are removed with it too, even if they are not staged, as the ones inserted by the sync.
+   *
+   * @throws OBException
+   *     if the rows cannot be written
+   */
+  public void apply() {
+    writeStaged(INSERT_STAGE_PACKAGE, stagedPackages, 1);
+    writeStaged(INSERT_STAGE_PACKAGE_VERSION, stagedVersions, 1);
+    writeStaged(INSERT_STAGE_PACKAGE_DEPENDENCY, stagedDependencies, 1);
+    writeStaged(INSERT_STAGE_DELETED, stagedDeletions, 1);
+    OBContext context = OBContext.getOBContext();
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    String userId = context.getUser().getId();
+    Object[] audit = { context.getCurrentClient().getId(), context.getCurrentOrganization().getId(), now, userId,
+        now, userId };
+    try (Statement statement = connection.createStatement()) {
+      deletedRows += statement.executeUpdate(DELETE_PACKAGE_DEPENDENCY);
+      upsert(UPSERT_PACKAGE, audit);
+      upsert(UPSERT_PACKAGE_VERSION, audit);
+      upsert(UPSERT_PACKAGE_DEPENDENCY, audit);
+      clearDeletedDependencyVersions(now, userId);
+      deletedRows += statement.executeUpdate(DELETE_DELETED_VERSION_DEPENDENCIES);
+      deletedRows += statement.executeUpdate(DELETE_PACKAGE_VERSION);
+      deletedRows += statement.executeUpdate(DELETE_PACKAGE);
+      statement.execute(DROP_STAGING_TABLES);
+    } catch (SQLException e) {
+      throw new OBException("Failed to import the packages dataset", e);
+    }
+  }
+
+  /**
+   * Drops the staging tables without applying the staged rows.
+   *
+   * @throws OBException
+   *     if the staging tables cannot be dropped
+   */
+  public void discard() {
+    stagedPackages.clear();
+    stagedVersions.clear();
+    stagedDependencies.clear();
+    stagedDeletions.clear();
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(DROP_STAGING_TABLES);
+    } catch (SQLException e) {
+      throw new OBException("Failed to drop the staging tables of the packages dataset", e);
+    }
+  }
+
+  /**
+   * Removes the references of the dependencies to the versions being removed, which would otherwise
+   * prevent their removal.
+   */
+  private void clearDeletedDependencyVersions(Timestamp now, String userId) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(CLEAR_DELETED_DEPENDENCY_VERSION)) {
+      statement.setTimestamp(1, now);
+      statement.setString(2, userId);
+      updatedRows += statement.executeUpdate();
+    }
+  }
+
+  /**
+   * @return the rows inserted by {@link #apply()}
+   */
+  public long getInsertedRows() {
+    return insertedRows;
+  }
+
+  /**
+   * @return the rows updated by {@link #apply()}
+   */
+  public long getUpdatedRows() {
+    return updatedRows;
+  }
+
+  /**
+   * @return the rows of the dataset that were already stored with the same values, and were not written
+   */
+  public long getUnchangedRows() {
+    return unchangedRows;
+  }
+
+  /**
+   * @return the rows removed by {@link #apply()}
+   */
+  public long getDeletedRows() {
+    return deletedRows;
+  }
+
+  /**
+   * Writes the staged rows with a JDBC batch, once there are at least {@code minRows} of them.
+   */
+  private void writeStaged(String sql, List<Object[]> rows, int minRows) {
+    if (rows.isEmpty() || rows.size() < minRows) {
+      return;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (Object[] row : rows) {
+        setParameters(statement, row);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    } catch (SQLException e) {
+      throw new OBException("Failed to stage the packages dataset", e);
+    }
+    rows.clear();
+  }
+
+  private void upsert(String sql, Object[] audit) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      setParameters(statement, audit);
+      try (ResultSet result = statement.executeQuery()) {
+        result.next();
+        long sourceRows = result.getLong(1);
+        long inserted = result.getLong(2);
+        long updated = result.getLong(3);
+        insertedRows += inserted;
+        updatedRows += updated;
+        unchangedRows += sourceRows - inserted - updated;
+      }
+    }
+  }
+
+  private static void setParameters(PreparedStatement statement, Object[] values) throws SQLException {
+    for (int i = 0; i < values.length; i++) {
+      statement.setObject(i + 1, values[i]);
+    }
+  }
+
+  /**
+   * @return the boolean text of the dataset as a Y/N flag, or null if it is empty
+   */
+  private static String toYesNo(String value) {
+    Boolean flag = BooleanUtils.toBooleanObject(value);
+    return flag == null ? null : (flag ? "Y" : "N");
+  }
+}
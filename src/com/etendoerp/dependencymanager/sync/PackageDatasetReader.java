@@ -0,0 +1,140 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang.BooleanUtils;
+
+/**
+ * Streaming reader of the packages dataset, the XML export of the {@code ETDEP_Package},
+ * {@code ETDEP_Package_Version} and {@code ETDEP_Package_Dependency} rows.
+ * <p>
+ * The dataset is read with StAX directly from the stream in a single pass, and each row is handed to the
+ * caller as soon as its element ends, so memory does not grow with the size of the dataset. Every row keeps
+ * the text of its properties, and the id of the row referenced by each of its reference properties, which is
+ * null if the reference is empty.
+ */
+public class PackageDatasetReader {
+  private static final XMLInputFactory xmlInputFactory = createInputFactory();
+  private static final String ID = "id";
+  private static final String NIL = "nil";
+
+  private PackageDatasetReader() {
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * Reads a dataset.
+   *
+   * @param in
+   *     the content of the dataset, it is not closed
+   * @param rowHandler
+   *     called with each row of the dataset, in the order of the file
+   * @throws XMLStreamException
+   *     if the content is not well-formed XML
+   */
+  public static void read(InputStream in, Consumer<DatasetRow> rowHandler) throws XMLStreamException {
+    XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+    try {
+      read(reader, rowHandler);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void read(XMLStreamReader reader, Consumer<DatasetRow> rowHandler) throws XMLStreamException {
+    int depth = 0;
+    String entityName = null;
+    Map<String, String> values = null;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        if (depth == 1) {
+          entityName = reader.getLocalName();
+          values = new LinkedHashMap<>();
+          depth++;
+        } else if (depth == 2) {
+          String name = reader.getLocalName();
+          String referencedId = reader.getAttributeValue(null, ID);
+          if (referencedId != null || isNil(reader)) {
+            values.put(name, referencedId);
+            skipElement(reader);
+          } else {
+            values.put(name, reader.getElementText());
+          }
+        } else {
+          depth++;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+        if (depth == 1 && values != null) {
+          rowHandler.accept(new DatasetRow(entityName, Collections.unmodifiableMap(values)));
+          values = null;
+        }
+      }
+    }
+  }
+
+  private static boolean isNil(XMLStreamReader reader) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (NIL.equals(reader.getAttributeLocalName(i))) {
+        return BooleanUtils.toBoolean(reader.getAttributeValue(i));
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves the reader to the end of the current element, skipping its content.
+   */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * A row of the dataset.
+   *
+   * @param entityName
+   *     the name of the entity of the row, such as {@code ETDEP_Package}
+   * @param values
+   *     the text of each property, or the id referenced by each reference property
+   */
+  public record DatasetRow(String entityName, Map<String, String> values) {
+
+    /**
+     * @return the text of a property or the referenced id, null if the property is missing or is an empty reference
+     */
+    public String get(String property) {
+      return values.get(property);
+    }
+
+    /**
+     * @return the value of a boolean property, null if it is missing or not a boolean
+     */
+    public Boolean getBoolean(String property) {
+      return BooleanUtils.toBooleanObject(values.get(property));
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * A repository the packages are synchronized from.
+ * <p>
+ * A source lists its packages, the versions of each package, and opens the POM of each version. Every
+ * resource is identified by a location, such as a URL, that is also the key used to store its HTTP
+ * validators and its failures between syncs. Sources that support conditional requests return null for
+ * the listings that have not changed since the last sync. The methods may be called concurrently from the
+ * fetch workers, so implementations must be thread safe and must not access OBDal.
+ * <p>
+ * The source used by the synchronization is chosen with the {@value #SOURCE_PROPERTY} property:
+ * {@value #GITHUB_SOURCE}, the default, which uses the mirrors of a {@link MirroredPackageSource}, or
+ * {@value #LOCAL_SOURCE}, which reads a Maven repository in the directory of the {@value #LOCAL_PATH_PROPERTY}
+ * property.
+ */
+public interface PackageRepositorySource {
+  String SOURCE_PROPERTY = "etdep.sync.source";
+  String LOCAL_PATH_PROPERTY = "etdep.sync.source.local.path";
+  String GITHUB_SOURCE = "github";
+  String LOCAL_SOURCE = "local";
+  int VERSION_PAGE_SIZE = 100;
+
+  /**
+   * Creates the source configured in Openbravo.properties.
+   *
+   * @param validatorCache
+   *     the validators used for conditional requests, or null to always request full responses
+   * @return the configured source
+   * @throws OBException
+   *     if the configured source is not known or is not properly configured
+   */
+  static PackageRepositorySource fromProperties(HttpValidatorCache validatorCache) {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    String source = properties.getProperty(SOURCE_PROPERTY, GITHUB_SOURCE).trim();
+    if (StringUtils.equals(GITHUB_SOURCE, source)) {
+      return MirroredPackageSource.fromProperties(MirroredPackageSource.SYNC_API_MIRRORS_PROPERTY,
+          MirroredPackageSource.DEFAULT_SYNC_API_MIRRORS, validatorCache);
+    }
+    if (StringUtils.equals(LOCAL_SOURCE, source)) {
+      String path = properties.getProperty(LOCAL_PATH_PROPERTY);
+      if (StringUtils.isBlank(path)) {
+        throw new OBException(String.format("The %s property is required by the %s package source",
+            LOCAL_PATH_PROPERTY, LOCAL_SOURCE));
+      }
+      return new LocalMavenPackageSource(Paths.get(path.trim()));
+    }
+    throw new OBException(String.format("Unknown package source %s in the %s property", source, SOURCE_PROPERTY));
+  }
+
+  /**
+   * @param page
+   *     the number of the page, starting at 1
+   * @return the location of a page of the package listing
+   */
+  String getPackagePageLocation(int page);
+
+  /**
+   * Lists a page of packages.
+   *
+   * @param location
+   *     the location of the page, as returned by {@link #getPackagePageLocation(int)} or by the previous page
+   * @return the packages of the page, or null if it has not changed since the last sync
+   * @throws IOException
+   *     if the page cannot be read
+   */
+  ListingPage<RepositoryPackage> fetchPackages(String location) throws IOException;
+
+  /**
+   * @param packageName
+   *     the name of the package, {@code group.artifact}
+   * @return the location of the version listing of a package, which is its first page of
+   *     {@value #VERSION_PAGE_SIZE} versions
+   */
+  String getVersionsLocation(String packageName);
+
+  /**
+   * @param packageName
+   *     the name of the package, {@code group.artifact}
+   * @return every location the version listing of a package may be read from, by default only the one of
+   *     {@link #getVersionsLocation(String)}
+   */
+  default List<String> getVersionsLocations(String packageName) {
+    return List.of(getVersionsLocation(packageName));
+  }
+
+  /**
+   * Lists the first page of the versions of a package, newest first. Only the page of
+   * {@value #VERSION_PAGE_SIZE} versions, the one of {@link #getVersionsLocation(String)}, is requested
+   * conditionally.
+   *
+   * @param packageName
+   *     the name of the package, {@code group.artifact}
+   * @param pageSize
+   *     the number of versions of each page, sources that do not paginate return them all
+   * @return the versions of the first page, or null if they have not changed since the last sync
+   * @throws IOException
+   *     if the versions cannot be read
+   */
+  ListingPage<RepositoryPackageVersion> fetchVersionPage(String packageName, int pageSize) throws IOException;
+
+  /**
+   * Lists a page of versions after the first one.
+   *
+   * @param location
+   *     the location of the page, as returned by the previous page
+   * @return the versions of the page
+   * @throws IOException
+   *     if the versions cannot be read
+   */
+  ListingPage<RepositoryPackageVersion> fetchNextVersionPage(String location) throws IOException;
+
+  /**
+   * Lists every version of a package, newest first, following the pages of {@value #VERSION_PAGE_SIZE}
+   * versions.
+   *
+   * @param packageName
+   *     the name of the package, {@code group.artifact}
+   * @return the versions of the package, or null if they have not changed since the last sync
+   * @throws IOException
+   *     if the versions cannot be read
+   */
+  default List<RepositoryPackageVersion> fetchVersions(String packageName) throws IOException {
+    return readVersionPages(this, fetchVersionPage(packageName, VERSION_PAGE_SIZE));
+  }
+
+  /**
+   * Reads every version of a listing, requesting the pages after the first one to a source.
+   *
+   * @param source
+   *     the source the first page was read from, where the next pages are located
+   * @param firstPage
+   *     the first page of the listing, may be null
+   * @return the versions of every page, or null if the first page is null
+   * @throws IOException
+   *     if a page cannot be read
+   */
+  static List<RepositoryPackageVersion> readVersionPages(PackageRepositorySource source,
+      ListingPage<RepositoryPackageVersion> firstPage) throws IOException {
+    if (firstPage == null) {
+      return null;
+    }
+    List<RepositoryPackageVersion> versions = new ArrayList<>(firstPage.items());
+    ListingPage<RepositoryPackageVersion> versionPage = firstPage;
+    while (versionPage.nextLocation() != null) {
+      versionPage = source.fetchNextVersionPage(versionPage.nextLocation());
+      versions.addAll(versionPage.items());
+    }
+    return versions;
+  }
+
+  /**
+   * @return the location of the POM of a package version
+   */
+  String getPomLocation(String group, String artifact, String version);
+
+  /**
+   * Opens the POM of a package version.
+   *
+   * @return the content of the POM, which must be closed by the caller
+   * @throws java.nio.file.NoSuchFileException
+   *     if the local POM does not exist
+   * @throws HttpStatusException
+   *     if the repository answers with an error status
+   * @throws IOException
+   *     if the POM cannot be read
+   */
+  InputStream openPom(String group, String artifact, String version) throws IOException;
+}
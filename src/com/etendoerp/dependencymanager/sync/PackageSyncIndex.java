@@ -0,0 +1,198 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.SequenceIdData;
+
+import com.etendoerp.dependencymanager.data.Package;
+import com.etendoerp.dependencymanager.data.PackageDependency;
+import com.etendoerp.dependencymanager.data.PackageVersion;
+import com.etendoerp.dependencymanager.util.PackageUtil;
+
+/**
+ * In-memory index of the packages, package versions and package dependencies stored in the database,
+ * used by the package synchronization to resolve every upsert without querying row by row.
+ * <p>
+ * The keys of the existing rows are loaded once with three queries. New rows get their id right away
+ * and are written with JDBC batches when {@link #flush()} is called, so the database work of a sync
+ * grows with the number of changes instead of with the size of the catalog.
+ * This class is not thread safe: it must only be used from the thread that owns the OBDal session.
+ */
+public class PackageSyncIndex {
+  private static final String KEY_SEPARATOR = "\u001F";
+
+  private final Map<String, String> packageIds = new HashMap<>();
+  private final Map<String, Map<String, String>> versionIdsByPackage = new HashMap<>();
+  private final Set<String> dependencyKeys = new HashSet<>();
+  private final Set<String> versionsWithDependencies = new HashSet<>();
+  private final Map<String, String> lastVersionIds = new HashMap<>();
+  private final SyncBatchWriter writer = new SyncBatchWriter();
+
+  private PackageSyncIndex() {
+  }
+
+  /**
+   * Loads the keys of every package, package version and package dependency into memory.
+   *
+   * @return the loaded index
+   */
+  public static PackageSyncIndex load() {
+    PackageSyncIndex index = new PackageSyncIndex();
+    for (Object[] row : list("select p.id, p.group, p.artifact from " + Package.ENTITY_NAME + " p")) {
+      index.packageIds.put(key(row[1], row[2]), (String) row[0]);
+    }
+    for (Object[] row : list("select v.id, v.package.id, v.version from " + PackageVersion.ENTITY_NAME + " v")) {
+      index.versionIdsByPackage.computeIfAbsent((String) row[1], p -> new HashMap<>())
+          .put((String) row[2], (String) row[0]);
+    }
+    for (Object[] row : list("select d.packageVersion.id, d.group, d.artifact, d.version from "
+        + PackageDependency.ENTITY_NAME + " d")) {
+      index.dependencyKeys.add(key(row[0], row[1], row[2], row[3]));
+      index.versionsWithDependencies.add((String) row[0]);
+    }
+    return index;
+  }
+
+  private static List<Object[]> list(String hql) {
+    return OBDal.getInstance().getSession().createQuery(hql, Object[].class).list();
+  }
+
+  private static String key(Object... parts) {
+    StringBuilder key = new StringBuilder();
+    for (Object part : parts) {
+      key.append(part).append(KEY_SEPARATOR);
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return true if at least one package is stored
+   */
+  public boolean hasPackages() {
+    return !packageIds.isEmpty();
+  }
+
+  /**
+   * @return the id of the package, or null if it does not exist
+   */
+  public String findPackage(String group, String artifact) {
+    return packageIds.get(key(group, artifact));
+  }
+
+  /**
+   * Returns the id of the package, creating it if it does not exist.
+   */
+  public String findOrCreatePackage(String group, String artifact) {
+    String id = findPackage(group, artifact);
+    if (id == null) {
+      id = SequenceIdData.getUUID();
+      writer.insertPackage(id, group, artifact);
+      packageIds.put(key(group, artifact), id);
+    }
+    return id;
+  }
+
+  /**
+   * @return the id of the version of the package, or null if it does not exist
+   */
+  public String findPackageVersion(String packageId, String version) {
+    return findPackageVersions(packageId).get(version);
+  }
+
+  /**
+   * @return the ids of every version of the package, keyed by version
+   */
+  public Map<String, String> findPackageVersions(String packageId) {
+    return Collections.unmodifiableMap(versionIdsByPackage.getOrDefault(packageId, Collections.emptyMap()));
+  }
+
+  /**
+   * Returns the id of the version of the package, creating it if it does not exist.
+   */
+  public String findOrCreatePackageVersion(String packageId, String version) {
+    String id = findPackageVersion(packageId, version);
+    if (id == null) {
+      id = SequenceIdData.getUUID();
+      writer.insertPackageVersion(id, packageId, version);
+      versionIdsByPackage.computeIfAbsent(packageId, p -> new HashMap<>()).put(version, id);
+      lastVersionIds.remove(packageId);
+    }
+    return id;
+  }
+
+  /**
+   * Returns the id of the latest version of a package, following the ordering of
+   * {@link PackageUtil#getLastPackageVersion(Package)}. The result is cached per package.
+   *
+   * @return the id of the latest version, or null if the package has no versions
+   */
+  public String findLastPackageVersion(String packageId) {
+    if (!lastVersionIds.containsKey(packageId)) {
+      flush();
+      PackageVersion lastVersion = PackageUtil.getLastPackageVersion(
+          OBDal.getInstance().getProxy(Package.class, packageId));
+      lastVersionIds.put(packageId, lastVersion != null ? lastVersion.getId() : null);
+    }
+    return lastVersionIds.get(packageId);
+  }
+
+  /**
+   * @return true if the package version has at least one dependency
+   */
+  public boolean hasDependencies(String packageVersionId) {
+    return versionsWithDependencies.contains(packageVersionId);
+  }
+
+  /**
+   * @return true if the dependency is already stored for the package version
+   */
+  public boolean hasDependency(String packageVersionId, String group, String artifact, String version) {
+    return dependencyKeys.contains(key(packageVersionId, group, artifact, version));
+  }
+
+  /**
+   * Creates a dependency of a package version, unless it already exists.
+   */
+  public void createPackageDependency(String packageVersionId, String group, String artifact, String version,
+      String dependencyVersionId, boolean externalDependency) {
+    if (dependencyKeys.add(key(packageVersionId, group, artifact, version))) {
+      writer.insertPackageDependency(SequenceIdData.getUUID(), packageVersionId, group, artifact, version,
+          dependencyVersionId, externalDependency);
+      versionsWithDependencies.add(packageVersionId);
+    }
+  }
+
+  /**
+   * Updates the range of core versions supported by a package version.
+   */
+  public void updateCoreRange(String packageVersionId, String fromCore, String latestCore) {
+    writer.updatePackageVersionCore(packageVersionId, fromCore, latestCore);
+  }
+
+  /**
+   * Writes every pending row to the database.
+   */
+  public void flush() {
+    writer.flush();
+  }
+
+  /**
+   * @return the number of rows inserted so far
+   */
+  public long getInsertedRows() {
+    return writer.getInsertedRows();
+  }
+
+  /**
+   * @return the number of rows updated so far
+   */
+  public long getUpdatedRows() {
+    return writer.getUpdatedRows();
+  }
+}
@@ -0,0 +1,93 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * High-water marks of the incremental package synchronization.
+ * <p>
+ * For every package it keeps the {@code updated_at} value reported by the repository the last time the
+ * package was synced successfully. Packages whose {@code updated_at} has not changed since then can be
+ * skipped. The marks are only persisted when {@link #save()} is called, after the work of the marked
+ * packages has been committed.
+ */
+public class PackageSyncState {
+  private static final Logger log = LogManager.getLogger();
+  private static final String STATE_FILE_NAME = "package-sync-state.json";
+
+  private final Path file;
+  private final Map<String, String> lastUpdatedAt;
+
+  private PackageSyncState(Path file, Map<String, String> lastUpdatedAt) {
+    this.file = file;
+    this.lastUpdatedAt = new ConcurrentHashMap<>(lastUpdatedAt);
+  }
+
+  /**
+   * Loads the state stored in the sync cache directory.
+   *
+   * @return the loaded state, empty if no sync has been completed yet
+   * @throws IOException
+   *     if the cache directory cannot be accessed
+   */
+  public static PackageSyncState load() throws IOException {
+    Path stateFile = SyncFiles.getCacheDirectory().resolve(STATE_FILE_NAME);
+    Map<String, String> stored = SyncFiles.readJson(stateFile, new TypeReference<>() {
+    });
+    return new PackageSyncState(stateFile, stored != null ? stored : new HashMap<>());
+  }
+
+  /**
+   * Checks if a package has changed since its last successful sync.
+   *
+   * @param packageName
+   *     the name of the package
+   * @param updatedAt
+   *     the {@code updated_at} value currently reported by the repository, may be null
+   * @return true if the package must be synced
+   */
+  public boolean hasChanged(String packageName, String updatedAt) {
+    return StringUtils.isBlank(updatedAt) || !StringUtils.equals(updatedAt, lastUpdatedAt.get(packageName));
+  }
+
+  /**
+   * Records that a package has been synced successfully.
+   *
+   * @param packageName
+   *     the name of the package
+   * @param updatedAt
+   *     the {@code updated_at} value reported by the repository, ignored if null
+   */
+  public void markSynced(String packageName, String updatedAt) {
+    if (StringUtils.isNotBlank(updatedAt)) {
+      lastUpdatedAt.put(packageName, updatedAt);
+    }
+  }
+
+  /**
+   * Forgets every high-water mark, so all packages are synced again.
+   */
+  public void clear() {
+    lastUpdatedAt.clear();
+  }
+
+  /**
+   * Saves the high-water marks to the sync cache directory.
+   */
+  public void save() {
+    try {
+      SyncFiles.writeJson(file, new HashMap<>(lastUpdatedAt));
+    } catch (IOException e) {
+      log.error("Failed to save package sync state to {}", file, e);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Local cache of the POM files of released package versions.
+ * <p>
+ * A released version is never published again, so once its POM has been downloaded it can be read from
+ * disk forever. Files are stored in a {@code poms} folder of the sync cache directory, following the
+ * Maven repository layout ({@code group/artifact/version/artifact-version.pom}). Snapshot versions are
+ * never cached.
+ * <p>
+ * The size of the cache is bounded by the {@value #MAX_SIZE_PROPERTY} property of Openbravo.properties,
+ * in megabytes. When it is exceeded, the least recently used files are evicted. A size of 0 disables the
+ * cache. All the methods are thread safe.
+ */
+public class PomCache {
+  private static final Logger log = LogManager.getLogger();
+  public static final String MAX_SIZE_PROPERTY = "etdep.sync.pom.cache.max.size";
+  private static final long DEFAULT_MAX_SIZE_MB = 256;
+  private static final String POM_CACHE_DIR_NAME = "poms";
+  private static final String SNAPSHOT = "SNAPSHOT";
+  private static final String POM_EXTENSION = ".pom";
+  private static final double EVICTION_TARGET = 0.9;
+
+  private final Path dir;
+  private final long maxBytes;
+  private final AtomicLong sizeBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private PomCache(Path dir, long maxBytes, long sizeBytes) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.sizeBytes = new AtomicLong(sizeBytes);
+  }
+
+  /**
+   * Opens the cache stored in the sync cache directory, with the maximum size configured in Openbravo.properties.
+   *
+   * @return the opened cache
+   * @throws IOException
+   *     if the cache directory cannot be accessed
+   */
+  public static PomCache open() throws IOException {
+    String maxSize = OBPropertiesProvider.getInstance()
+        .getOpenbravoProperties()
+        .getProperty(MAX_SIZE_PROPERTY);
+    long maxBytes = Math.max(0, NumberUtils.toLong(maxSize, DEFAULT_MAX_SIZE_MB)) * 1024 * 1024;
+    Path pomDir = Files.createDirectories(SyncFiles.getCacheDirectory().resolve(POM_CACHE_DIR_NAME));
+    return new PomCache(pomDir, maxBytes, computeSize(pomDir));
+  }
+
+  private static long computeSize(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      return files.filter(PomCache::isPomFile).mapToLong(PomCache::sizeOf).sum();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static boolean isPomFile(Path file) {
+    return Files.isRegularFile(file) && file.getFileName().toString().endsWith(POM_EXTENSION);
+  }
+
+  private static long sizeOf(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * @return true if the POM of the given version can be cached
+   */
+  public boolean isCacheable(String version) {
+    return maxBytes > 0 && StringUtils.isNotBlank(version) && !StringUtils.containsIgnoreCase(version, SNAPSHOT);
+  }
+
+  /**
+   * Looks for the POM of a version in the cache.
+   *
+   * @return the cached file, or null if the version is not cached
+   */
+  public Path find(String group, String artifact, String version) {
+    if (!isCacheable(version)) {
+      return null;
+    }
+    Path file = resolve(group, artifact, version);
+    if (!Files.isRegularFile(file)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    try {
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      log.debug("Failed to touch cached POM {}: {}", file, e.getMessage());
+    }
+    return file;
+  }
+
+  /**
+   * Stores the POM of a version. The content is written to a temporary file first and then moved,
+   * so a file in the cache is always complete.
+   *
+   * @param pom
+   *     the content of the POM, it is not closed
+   * @return the cached file
+   * @throws IOException
+   *     if the file cannot be written
+   */
+  public Path store(String group, String artifact, String version, InputStream pom) throws IOException {
+    Path file = resolve(group, artifact, version);
+    Files.createDirectories(file.getParent());
+    Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      long size = Files.copy(pom, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      long previousSize = Files.isRegularFile(file) ? sizeOf(file) : 0;
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      if (sizeBytes.addAndGet(size - previousSize) > maxBytes) {
+        evict();
+      }
+      return file;
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Removes the POM of a version from the cache, for example because it cannot be parsed.
+   */
+  public void invalidate(String group, String artifact, String version) {
+    Path file = resolve(group, artifact, version);
+    try {
+      long size = sizeOf(file);
+      if (Files.deleteIfExists(file)) {
+        sizeBytes.addAndGet(-size);
+      }
+    } catch (IOException e) {
+      log.warn("Failed to remove cached POM {}: {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * @return the number of POMs read from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of cacheable POMs not found in the cache
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private Path resolve(String group, String artifact, String version) {
+    return dir.resolve(group.replace('.', '/'))
+        .resolve(artifact)
+        .resolve(version)
+        .resolve(artifact + "-" + version + POM_EXTENSION);
+  }
+
+  /**
+   * Deletes the least recently used files until the cache is below the eviction target.
+   */
+  private synchronized void evict() {
+    if (sizeBytes.get() <= maxBytes) {
+      return;
+    }
+    List<Path> files;
+    try (Stream<Path> stream = Files.walk(dir)) {
+      files = stream.filter(PomCache::isPomFile)
+          .sorted(Comparator.comparing(PomCache::lastModified))
+          .collect(Collectors.toList());
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Failed to evict cached POMs from {}: {}", dir, e.getMessage());
+      return;
+    }
+    long target = (long) (maxBytes * EVICTION_TARGET);
+    int evicted = 0;
+    for (Path file : files) {
+      if (sizeBytes.get() <= target) {
+        break;
+      }
+      long size = sizeOf(file);
+      try {
+        if (Files.deleteIfExists(file)) {
+          sizeBytes.addAndGet(-size);
+          evicted++;
+        }
+      } catch (IOException e) {
+        log.debug("Failed to evict cached POM {}: {}", file, e.getMessage());
+      }
+    }
+    log.debug("Evicted {} cached POMs from {}", evicted, dir);
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+}
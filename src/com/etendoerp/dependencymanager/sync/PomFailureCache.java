@@ -0,0 +1,182 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Persistent store of the POM files that could not be fetched or parsed.
+ * <p>
+ * Every failure records its class and the time of the next allowed attempt. The spacing between attempts
+ * doubles with every consecutive failure, starting from a base that depends on the failure class, so a
+ * version whose POM does not exist stops costing a request on every synchronization. A successful fetch
+ * removes the entry. All the methods are thread safe.
+ */
+public class PomFailureCache {
+  private static final Logger log = LogManager.getLogger();
+  private static final String CACHE_FILE_NAME = "pom-failures.json";
+  private static final long HOUR_MILLIS = 60L * 60 * 1000;
+  private static final long MAX_SPACING_MILLIS = 30L * 24 * HOUR_MILLIS;
+  private static final int MAX_SPACING_EXPONENT = 16;
+
+  /**
+   * The kind of failure of a POM fetch.
+   */
+  public enum FailureClass {
+    /** The POM does not exist in the repository. */
+    NOT_FOUND(24 * HOUR_MILLIS),
+    /** The repository answered with an error status. */
+    HTTP_ERROR(HOUR_MILLIS),
+    /** The request could not be completed. */
+    NETWORK(HOUR_MILLIS),
+    /** The POM is not valid XML. */
+    PARSE(24 * HOUR_MILLIS);
+
+    private final long baseSpacingMillis;
+
+    FailureClass(long baseSpacingMillis) {
+      this.baseSpacingMillis = baseSpacingMillis;
+    }
+  }
+
+  private final Path file;
+  private final Map<String, Failure> failures;
+
+  private PomFailureCache(Path file, Map<String, Failure> failures) {
+    this.file = file;
+    this.failures = new ConcurrentHashMap<>(failures);
+  }
+
+  /**
+   * Loads the failures stored in the sync cache directory.
+   *
+   * @return the loaded store, empty if no failures have been recorded yet
+   * @throws IOException
+   *     if the cache directory cannot be accessed
+   */
+  public static PomFailureCache load() throws IOException {
+    Path cacheFile = SyncFiles.getCacheDirectory().resolve(CACHE_FILE_NAME);
+    Map<String, Failure> stored = SyncFiles.readJson(cacheFile, new TypeReference<>() {
+    });
+    return new PomFailureCache(cacheFile, stored != null ? stored : new HashMap<>());
+  }
+
+  /**
+   * Checks if a POM can be requested now.
+   *
+   * @param url
+   *     the URL of the POM
+   * @return false if the POM failed before and its next attempt is not due yet
+   */
+  public boolean isDue(String url) {
+    Failure failure = failures.get(url);
+    return failure == null || failure.nextAttemptAt <= System.currentTimeMillis();
+  }
+
+  /**
+   * @return the recorded failure of a POM, or null if it has not failed
+   */
+  Failure getFailure(String url) {
+    return failures.get(url);
+  }
+
+  /**
+   * @return the failures whose next attempt is due, keyed by the URL of the POM
+   */
+  public Map<String, Failure> getDueFailures() {
+    long now = System.currentTimeMillis();
+    Map<String, Failure> due = new HashMap<>();
+    failures.forEach((url, failure) -> {
+      if (failure.nextAttemptAt <= now) {
+        due.put(url, failure);
+      }
+    });
+    return due;
+  }
+
+  /**
+   * Records a failed attempt, scheduling the next one.
+   *
+   * @param url
+   *     the URL of the POM
+   * @param group
+   *     the group of the package
+   * @param artifact
+   *     the artifact of the package
+   * @param version
+   *     the version of the package
+   * @param failureClass
+   *     the kind of failure
+   */
+  public void recordFailure(String url, String group, String artifact, String version, FailureClass failureClass) {
+    long now = System.currentTimeMillis();
+    failures.compute(url, (key, previous) -> {
+      int attempts = previous != null && previous.failureClass == failureClass ? previous.attempts + 1 : 1;
+      long spacing = Math.min(MAX_SPACING_MILLIS,
+          failureClass.baseSpacingMillis << Math.min(attempts - 1, MAX_SPACING_EXPONENT));
+      return new Failure(group, artifact, version, failureClass, attempts, now, now + spacing);
+    });
+  }
+
+  /**
+   * Forgets the failures of a POM, once it has been fetched or its version no longer needs it.
+   *
+   * @param url
+   *     the URL of the POM
+   */
+  public void forget(String url) {
+    failures.remove(url);
+  }
+
+  /**
+   * Removes every recorded failure, so all the POMs are requested again.
+   */
+  public void clear() {
+    failures.clear();
+  }
+
+  /**
+   * Saves the failures to the sync cache directory.
+   */
+  public void save() {
+    try {
+      SyncFiles.writeJson(file, new HashMap<>(failures));
+    } catch (IOException e) {
+      log.error("Failed to save POM failures to {}", file, e);
+    }
+  }
+
+  /**
+   * A failed POM, with the time of its next allowed attempt.
+   */
+  public static class Failure {
+    public String group;
+    public String artifact;
+    public String version;
+    public FailureClass failureClass;
+    public int attempts;
+    public long lastFailureAt;
+    public long nextAttemptAt;
+
+    public Failure() {
+    }
+
+    public Failure(String group, String artifact, String version, FailureClass failureClass, int attempts,
+        long lastFailureAt, long nextAttemptAt) {
+      this.group = group;
+      this.artifact = artifact;
+      this.version = version;
+      this.failureClass = failureClass;
+      this.attempts = attempts;
+      this.lastFailureAt = lastFailureAt;
+      this.nextAttemptAt = nextAttemptAt;
+    }
+  }
+}
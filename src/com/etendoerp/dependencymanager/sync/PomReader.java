@@ -0,0 +1,177 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of Maven POM files.
+ * <p>
+ * The POM is read with StAX directly from the stream, honoring the encoding declared in the file, and
+ * reading stops right after the {@code <dependencies>} section of the project. Only the project version,
+ * the {@code <parent>}, the {@code <properties>} and the direct dependencies are kept, so no document
+ * tree is built. Properties declared after the dependencies are not read.
+ */
+public class PomReader {
+  private static final XMLInputFactory xmlInputFactory = createInputFactory();
+  private static final Pattern PROPERTY_REFERENCE = Pattern.compile("\\$\\{([^}]+)}");
+  private static final String GROUP_ID = "groupId";
+  private static final String ARTIFACT_ID = "artifactId";
+  private static final String VERSION = "version";
+  private static final String PARENT = "parent";
+  private static final String PROPERTIES = "properties";
+  private static final String DEPENDENCIES = "dependencies";
+  private static final String DEPENDENCY = "dependency";
+
+  private PomReader() {
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * Reads a POM file.
+   *
+   * @param in
+   *     the content of the POM file, it is not closed
+   * @return the parts of the POM used by the synchronization
+   * @throws XMLStreamException
+   *     if the content is not well-formed XML
+   */
+  public static Pom read(InputStream in) throws XMLStreamException {
+    XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+    try {
+      return read(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static Pom read(XMLStreamReader reader) throws XMLStreamException {
+    Deque<String> path = new ArrayDeque<>();
+    String version = null;
+    Map<String, String> parent = new HashMap<>();
+    Map<String, String> properties = new HashMap<>();
+    List<Dependency> dependencies = new ArrayList<>();
+    Map<String, String> dependency = null;
+
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = reader.getLocalName();
+        int depth = path.size();
+        String current = path.peek();
+        if (depth == 1 && VERSION.equals(name)) {
+          version = readText(reader);
+        } else if (depth == 2 && PARENT.equals(current)) {
+          parent.put(name, readText(reader));
+        } else if (depth == 2 && PROPERTIES.equals(current)) {
+          properties.put(name, readText(reader));
+        } else if (depth == 3 && dependency != null && isCoordinate(name)) {
+          dependency.put(name, readText(reader));
+        } else {
+          if (depth == 2 && DEPENDENCIES.equals(current) && DEPENDENCY.equals(name)) {
+            dependency = new HashMap<>();
+          }
+          path.push(name);
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        String name = path.pop();
+        if (path.size() == 2 && dependency != null) {
+          dependencies.add(new Dependency(dependency.get(GROUP_ID), dependency.get(ARTIFACT_ID),
+              dependency.get(VERSION)));
+          dependency = null;
+        } else if (path.size() == 1 && DEPENDENCIES.equals(name)) {
+          break;
+        }
+      }
+    }
+    Dependency parentDependency = parent.isEmpty() ? null
+        : new Dependency(parent.get(GROUP_ID), parent.get(ARTIFACT_ID), parent.get(VERSION));
+    return new Pom(version, parentDependency, Collections.unmodifiableMap(properties),
+        Collections.unmodifiableList(dependencies));
+  }
+
+  private static boolean isCoordinate(String name) {
+    return GROUP_ID.equals(name) || ARTIFACT_ID.equals(name) || VERSION.equals(name);
+  }
+
+  private static String readText(XMLStreamReader reader) throws XMLStreamException {
+    return reader.getElementText().trim();
+  }
+
+  /**
+   * The coordinates of a dependency or of the parent of a POM.
+   */
+  public record Dependency(String groupId, String artifactId, String version) {
+  }
+
+  /**
+   * The parts of a POM file used by the synchronization.
+   *
+   * @param version
+   *     the version of the project, null if it is inherited from the parent
+   * @param parent
+   *     the parent of the project, null if it has none
+   * @param properties
+   *     the properties declared before the dependencies
+   * @param dependencies
+   *     the direct dependencies of the project, with their versions as written in the file
+   */
+  public record Pom(String version, Dependency parent, Map<String, String> properties,
+      List<Dependency> dependencies) {
+
+    /**
+     * Replaces the property references of a value, such as a dependency version, with the properties
+     * of the POM and the version of the project or its parent. Unknown references are kept as they are.
+     *
+     * @param value
+     *     the value to resolve, may be null
+     * @return the resolved value
+     */
+    public String resolve(String value) {
+      if (value == null || !value.contains("${")) {
+        return value;
+      }
+      Matcher matcher = PROPERTY_REFERENCE.matcher(value);
+      StringBuilder resolved = new StringBuilder();
+      while (matcher.find()) {
+        String property = getProperty(matcher.group(1));
+        matcher.appendReplacement(resolved, Matcher.quoteReplacement(property != null ? property : matcher.group()));
+      }
+      matcher.appendTail(resolved);
+      return resolved.toString();
+    }
+
+    private String getProperty(String name) {
+      String parentVersion = parent != null ? parent.version() : null;
+      switch (name) {
+        case "project.version":
+        case "pom.version":
+        case VERSION:
+          return version != null ? version : parentVersion;
+        case "project.parent.version":
+        case "parent.version":
+          return parentVersion;
+        default:
+          return properties.get(name);
+      }
+    }
+  }
+}
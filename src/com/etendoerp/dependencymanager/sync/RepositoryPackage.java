@@ -0,0 +1,14 @@
+package com.etendoerp.dependencymanager.sync;
+
+/**
+ * A package listed by a {@link PackageRepositorySource}, with only the fields used by the synchronization.
+ *
+ * @param name
+ *     the name of the package, {@code group.artifact}
+ * @param updatedAt
+ *     the time the package was last updated, as reported by its source, may be null
+ * @param repositoryName
+ *     the name of the repository that publishes the package, may be null
+ */
+public record RepositoryPackage(String name, String updatedAt, String repositoryName) {
+}
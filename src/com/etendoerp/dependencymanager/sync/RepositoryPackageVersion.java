@@ -0,0 +1,10 @@
+package com.etendoerp.dependencymanager.sync;
+
+/**
+ * A version of a package listed by a {@link PackageRepositorySource}.
+ *
+ * @param name
+ *     the version
+ */
+public record RepositoryPackageVersion(String name) {
+}
@@ -0,0 +1,259 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Paces the requests sent to a rate limited host, following the rate limit headers of its responses.
+ * <p>
+ * There is a single governor per host, shared by every caller in the JVM. Each response updates the known
+ * budget from the {@code X-RateLimit-Remaining}, {@code X-RateLimit-Reset} and {@code Retry-After} headers.
+ * While the remaining budget is above the {@value #PACING_THRESHOLD_PROPERTY} property, requests run
+ * freely up to the configured parallelism. Below it, the concurrency is reduced and the requests are
+ * spaced so the rest of the budget lasts until the reset time. Once the budget is exhausted, or the host
+ * asks to retry later, every request waits until the reset instead of failing, unless the wait is longer
+ * than the {@value #MAX_PAUSE_PROPERTY} property, in seconds. A caller that cannot wait that long, such as
+ * an interactive lookup, can send its requests with a shorter maximum pause.
+ */
+public class RequestGovernor {
+  private static final Logger log = LogManager.getLogger();
+  public static final String PACING_THRESHOLD_PROPERTY = "etdep.sync.ratelimit.pacing.threshold";
+  public static final String MAX_PAUSE_PROPERTY = "etdep.sync.ratelimit.max.pause";
+  public static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining";
+  public static final String RATE_LIMIT_RESET_HEADER = "X-RateLimit-Reset";
+  public static final String RETRY_AFTER_HEADER = "Retry-After";
+  private static final int DEFAULT_PACING_THRESHOLD = 500;
+  private static final long DEFAULT_MAX_PAUSE_SECONDS = 3600;
+  private static final int MAX_RATE_LIMITED_RETRIES = 3;
+  private static final int HTTP_FORBIDDEN = 403;
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final Map<String, RequestGovernor> governors = new ConcurrentHashMap<>();
+
+  private final String host;
+  private final int maxConcurrency;
+  private final int pacingThreshold;
+  private final long maxPauseMillis;
+  private int inFlight;
+  private long remaining = -1;
+  private long resetAt;
+  private long pausedUntil;
+  private long nextRequestAt;
+
+  RequestGovernor(String host, int maxConcurrency, int pacingThreshold, long maxPauseMillis) {
+    this.host = host;
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.pacingThreshold = Math.max(1, pacingThreshold);
+    this.maxPauseMillis = maxPauseMillis;
+  }
+
+  /**
+   * Returns the governor of the host of the given URI, creating it with the configuration of
+   * Openbravo.properties the first time.
+   *
+   * @param uri
+   *     the requested URI
+   * @return the shared governor of the host
+   */
+  public static RequestGovernor forUri(URI uri) {
+    return governors.computeIfAbsent(String.valueOf(uri.getHost()), RequestGovernor::fromProperties);
+  }
+
+  private static RequestGovernor fromProperties(String host) {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return new RequestGovernor(host,
+        NumberUtils.toInt(properties.getProperty(ConcurrentFetcher.PARALLELISM_PROPERTY),
+            ConcurrentFetcher.DEFAULT_PARALLELISM),
+        NumberUtils.toInt(properties.getProperty(PACING_THRESHOLD_PROPERTY), DEFAULT_PACING_THRESHOLD),
+        NumberUtils.toLong(properties.getProperty(MAX_PAUSE_PROPERTY), DEFAULT_MAX_PAUSE_SECONDS) * 1000);
+  }
+
+  /**
+   * Sends a request through the governor. If the host answers that the rate limit has been exceeded, the
+   * request is sent again once the governor allows it, a bounded number of times.
+   *
+   * @param client
+   *     the client used to send the request
+   * @param request
+   *     the request to send
+   * @param bodyHandler
+   *     the handler of the body of the response
+   * @return the response
+   * @throws IOException
+   *     if the request fails
+   * @throws InterruptedException
+   *     if the thread is interrupted while waiting or sending
+   * @throws OBException
+   *     if the rate limit would require waiting longer than the maximum pause
+   */
+  public <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+      throws IOException, InterruptedException {
+    return send(client, request, bodyHandler, maxPauseMillis);
+  }
+
+  /**
+   * Sends a request through the governor, failing instead of waiting for the rate limit longer than the
+   * given pause, if it is shorter than the one configured for the host.
+   *
+   * @param client
+   *     the client used to send the request
+   * @param request
+   *     the request to send
+   * @param bodyHandler
+   *     the handler of the body of the response
+   * @param maxPauseMillis
+   *     the longest time the request may wait for the rate limit
+   * @return the response
+   * @throws IOException
+   *     if the request fails
+   * @throws InterruptedException
+   *     if the thread is interrupted while waiting or sending
+   * @throws OBException
+   *     if the rate limit would require waiting longer than the maximum pause
+   */
+  public <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+      long maxPauseMillis) throws IOException, InterruptedException {
+    long pauseLimitMillis = Math.min(maxPauseMillis, this.maxPauseMillis);
+    for (int attempt = 0;; attempt++) {
+      boolean lastAttempt = attempt >= MAX_RATE_LIMITED_RETRIES;
+      acquire(pauseLimitMillis);
+      HttpResponse<T> response;
+      try {
+        response = client.send(request, info -> !lastAttempt && isRateLimited(info.statusCode(), info.headers())
+            ? HttpResponse.BodySubscribers.replacing(null)
+            : bodyHandler.apply(info));
+      } catch (IOException | InterruptedException | RuntimeException e) {
+        release(0, null);
+        throw e;
+      }
+      release(response.statusCode(), response.headers());
+      if (lastAttempt || !isRateLimited(response.statusCode(), response.headers())) {
+        return response;
+      }
+      log.warn("Request to {} was rate limited, it will be sent again", request.uri());
+    }
+  }
+
+  /**
+   * Waits until a request can be sent.
+   */
+  synchronized void acquire() throws InterruptedException {
+    acquire(maxPauseMillis);
+  }
+
+  /**
+   * Waits until a request can be sent, failing if the rate limit requires waiting longer than the given pause.
+   */
+  synchronized void acquire(long maxPauseMillis) throws InterruptedException {
+    while (true) {
+      long now = System.currentTimeMillis();
+      if (pausedUntil > now) {
+        if (pausedUntil - now > maxPauseMillis) {
+          throw new OBException(String.format("Rate limit of %s exhausted until %s", host, new Date(pausedUntil)));
+        }
+        wait(pausedUntil - now);
+      } else if (inFlight >= getAllowedConcurrency(now)) {
+        wait();
+      } else if (nextRequestAt > now) {
+        wait(nextRequestAt - now);
+      } else {
+        inFlight++;
+        nextRequestAt = now + getPacingInterval(now);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Releases a request, updating the known budget from the headers of its response.
+   *
+   * @param statusCode
+   *     the status of the response, or 0 if it failed
+   * @param headers
+   *     the headers of the response, or null if it failed
+   */
+  synchronized void release(int statusCode, HttpHeaders headers) {
+    inFlight--;
+    if (headers != null) {
+      long now = System.currentTimeMillis();
+      getLongHeader(headers, RATE_LIMIT_REMAINING_HEADER).ifPresent(value -> remaining = value);
+      getLongHeader(headers, RATE_LIMIT_RESET_HEADER).ifPresent(value -> resetAt = value * 1000);
+      long pauseUntil = getRetryAfter(headers, now);
+      if (pauseUntil == 0 && remaining == 0 && resetAt > now) {
+        pauseUntil = resetAt;
+      }
+      if (pauseUntil == 0 && isRateLimited(statusCode, headers)) {
+        pauseUntil = resetAt > now ? resetAt : now + 60_000;
+      }
+      if (pauseUntil > pausedUntil) {
+        pausedUntil = pauseUntil;
+        log.warn("Rate limit of {} reached, pausing requests until {}", host, new Date(pausedUntil));
+      }
+    }
+    notifyAll();
+  }
+
+  private int getAllowedConcurrency(long now) {
+    if (remaining < 0 || remaining >= pacingThreshold || resetAt <= now) {
+      return maxConcurrency;
+    }
+    return (int) Math.max(1, maxConcurrency * remaining / pacingThreshold);
+  }
+
+  private long getPacingInterval(long now) {
+    if (remaining < 0 || remaining >= pacingThreshold || resetAt <= now) {
+      return 0;
+    }
+    return (resetAt - now) / Math.max(1, remaining);
+  }
+
+  private static boolean isRateLimited(int statusCode, HttpHeaders headers) {
+    if (statusCode == HTTP_TOO_MANY_REQUESTS) {
+      return true;
+    }
+    return statusCode == HTTP_FORBIDDEN && (headers.firstValue(RETRY_AFTER_HEADER).isPresent()
+        || getLongHeader(headers, RATE_LIMIT_REMAINING_HEADER).orElse(-1) == 0);
+  }
+
+  private static OptionalLong getLongHeader(HttpHeaders headers, String name) {
+    String value = headers.firstValue(name).orElse(null);
+    return NumberUtils.isDigits(value) ? OptionalLong.of(Long.parseLong(value)) : OptionalLong.empty();
+  }
+
+  /**
+   * Parses the {@code Retry-After} header, which holds either a number of seconds or an HTTP date.
+   *
+   * @return the time until which requests must wait, or 0 if the header is not present
+   */
+  private static long getRetryAfter(HttpHeaders headers, long now) {
+    String value = headers.firstValue(RETRY_AFTER_HEADER).orElse(null);
+    if (value == null) {
+      return 0;
+    }
+    if (NumberUtils.isDigits(value.trim())) {
+      return now + Long.parseLong(value.trim()) * 1000;
+    }
+    try {
+      return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Sends the requests to the package repositories, tolerating transient failures.
+ * <p>
+ * Every request gets the timeout of the {@value #TIMEOUT_PROPERTY} property, in seconds, unless it has
+ * its own. Idempotent requests that fail with an I/O error or a 5xx status are sent again, up to the
+ * {@value #RETRIES_PROPERTY} property, waiting a random time that grows exponentially between attempts.
+ * Requests go through the {@link CircuitBreaker} and the {@link RequestGovernor} of their host. The
+ * clients of interactive lookups do not wait for an exhausted rate limit longer than the
+ * {@value #LOOKUP_MAX_PAUSE_PROPERTY} property, in seconds, and fail instead.
+ */
+public class ResilientHttpClient {
+  private static final Logger log = LogManager.getLogger();
+  public static final String TIMEOUT_PROPERTY = "etdep.sync.http.timeout";
+  public static final String RETRIES_PROPERTY = "etdep.sync.http.retries";
+  public static final String LOOKUP_MAX_PAUSE_PROPERTY = "etdep.lookup.ratelimit.max.pause";
+  private static final long DEFAULT_TIMEOUT_SECONDS = 30;
+  private static final int DEFAULT_RETRIES = 3;
+  private static final long DEFAULT_LOOKUP_MAX_PAUSE_SECONDS = 10;
+  private static final long BASE_BACKOFF_MILLIS = 500;
+  private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+  private final HttpClient client;
+  private final Duration timeout;
+  private final int retries;
+  private final long maxPauseMillis;
+
+  public ResilientHttpClient(HttpClient client, Duration timeout, int retries) {
+    this(client, timeout, retries, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a client whose requests wait for the rate limit at most the given pause.
+   *
+   * @param client
+   *     the client used to send the requests
+   * @param timeout
+   *     the timeout of the requests without their own
+   * @param retries
+   *     the number of times a failed idempotent request is sent again
+   * @param maxPauseMillis
+   *     the longest time a request waits for the rate limit, the governor's own limit still applies
+   */
+  public ResilientHttpClient(HttpClient client, Duration timeout, int retries, long maxPauseMillis) {
+    this.client = client;
+    this.timeout = timeout;
+    this.retries = Math.max(0, retries);
+    this.maxPauseMillis = maxPauseMillis;
+  }
+
+  /**
+   * Creates a client with the timeout and retries configured in Openbravo.properties.
+   *
+   * @param client
+   *     the client used to send the requests
+   * @return the resilient client
+   */
+  public static ResilientHttpClient fromProperties(HttpClient client) {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return new ResilientHttpClient(client,
+        Duration.ofSeconds(NumberUtils.toLong(properties.getProperty(TIMEOUT_PROPERTY), DEFAULT_TIMEOUT_SECONDS)),
+        NumberUtils.toInt(properties.getProperty(RETRIES_PROPERTY), DEFAULT_RETRIES));
+  }
+
+  /**
+   * Creates a client for interactive lookups, with the timeout and retries configured in Openbravo.properties,
+   * that fails if the rate limit requires waiting longer than the {@value #LOOKUP_MAX_PAUSE_PROPERTY} property.
+   *
+   * @param client
+   *     the client used to send the requests
+   * @return the resilient client
+   */
+  public static ResilientHttpClient forLookups(HttpClient client) {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return new ResilientHttpClient(client,
+        Duration.ofSeconds(NumberUtils.toLong(properties.getProperty(TIMEOUT_PROPERTY), DEFAULT_TIMEOUT_SECONDS)),
+        NumberUtils.toInt(properties.getProperty(RETRIES_PROPERTY), DEFAULT_RETRIES),
+        NumberUtils.toLong(properties.getProperty(LOOKUP_MAX_PAUSE_PROPERTY), DEFAULT_LOOKUP_MAX_PAUSE_SECONDS)
+            * 1000);
+  }
+
+  /**
+   * Sends a request, retrying it on transient failures if it is idempotent.
+   *
+   * @param request
+   *     the request to send
+   * @param bodyHandler
+   *     the handler of the body of the response
+   * @return the response, whose status may still be an error once the retries are exhausted
+   * @throws IOException
+   *     if the request fails on every attempt
+   * @throws InterruptedException
+   *     if the thread is interrupted while waiting or sending
+   * @throws CircuitOpenException
+   *     if the host has failed repeatedly and requests to it are suspended
+   * @throws org.openbravo.base.exception.OBException
+   *     if the rate limit would require waiting longer than the maximum pause
+   */
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+      throws IOException, InterruptedException {
+    HttpRequest timedRequest = request.timeout().isPresent() ? request
+        : HttpRequest.newBuilder(request, (name, value) -> true).timeout(timeout).build();
+    CircuitBreaker circuitBreaker = CircuitBreaker.forHost(request.uri().getHost());
+    RequestGovernor governor = RequestGovernor.forUri(request.uri());
+    int maxAttempts = isIdempotent(request) ? retries + 1 : 1;
+    for (int attempt = 1;; attempt++) {
+      boolean lastAttempt = attempt >= maxAttempts;
+      circuitBreaker.checkAllowed();
+      try {
+        HttpResponse<T> response = governor.send(client, timedRequest,
+            info -> !lastAttempt && isServerError(info.statusCode())
+                ? HttpResponse.BodySubscribers.replacing(null)
+                : bodyHandler.apply(info), maxPauseMillis);
+        if (!isServerError(response.statusCode())) {
+          circuitBreaker.recordSuccess();
+          return response;
+        }
+        circuitBreaker.recordFailure();
+        if (lastAttempt) {
+          return response;
+        }
+        log.warn("Request to {} failed with status code {}, attempt {} of {}", request.uri(),
+            response.statusCode(), attempt, maxAttempts);
+      } catch (IOException e) {
+        circuitBreaker.recordFailure();
+        if (lastAttempt) {
+          throw e;
+        }
+        log.warn("Request to {} failed: {}, attempt {} of {}", request.uri(), e.getMessage(), attempt,
+            maxAttempts);
+      }
+      SyncMetrics.addToCurrent(SyncMetrics.Counter.RETRIES, 1);
+      Thread.sleep(getBackoff(attempt));
+    }
+  }
+
+  private static boolean isIdempotent(HttpRequest request) {
+    return StringUtils.equals(request.method(), "GET") || StringUtils.equals(request.method(), "HEAD");
+  }
+
+  private static boolean isServerError(int statusCode) {
+    return statusCode >= 500 && statusCode < 600;
+  }
+
+  /**
+   * @return a random wait between 0 and an exponentially growing bound, so retries of concurrent requests spread out
+   */
+  private static long getBackoff(int attempt) {
+    long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 10));
+    return ThreadLocalRandom.current().nextLong(bound + 1);
+  }
+}
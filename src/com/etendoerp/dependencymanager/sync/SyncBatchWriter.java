@@ -0,0 +1,142 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+/**
+ * Accumulates the rows created or updated by the package synchronization and writes them with JDBC
+ * batches on the connection of the current OBDal session, so they take part in its transaction.
+ * <p>
+ * Pending statements are executed in foreign key order (packages, versions, version updates and
+ * dependencies) every time {@link #flush()} is called.
+ */
+class SyncBatchWriter {
+  private static final int BATCH_SIZE = 500;
+  private static final String AUDIT_COLUMNS = "ad_client_id, ad_org_id, isactive, created, createdby, updated, updatedby";
+  private static final String AUDIT_VALUES = "?, ?, 'Y', ?, ?, ?, ?";
+  private static final String INSERT_PACKAGE = "INSERT INTO etdep_package (etdep_package_id, "
+      + AUDIT_COLUMNS + ", depgroup, artifact) VALUES (?, " + AUDIT_VALUES + ", ?, ?)";
+  private static final String INSERT_PACKAGE_VERSION = "INSERT INTO etdep_package_version (etdep_package_version_id, "
+      + AUDIT_COLUMNS + ", etdep_package_id, version) VALUES (?, " + AUDIT_VALUES + ", ?, ?)";
+  private static final String UPDATE_PACKAGE_VERSION_CORE = "UPDATE etdep_package_version"
+      + " SET from_core = ?, latest_core = ?, updated = ?, updatedby = ? WHERE etdep_package_version_id = ?";
+  private static final String INSERT_PACKAGE_DEPENDENCY = "INSERT INTO etdep_package_dep (etdep_package_dep_id, "
+      + AUDIT_COLUMNS + ", etdep_package_version_id, depgroup, artifact, version, dependency_version_id, isexternaldependency)"
+      + " VALUES (?, " + AUDIT_VALUES + ", ?, ?, ?, ?, ?, ?)";
+
+  private final List<Object[]> packageInserts = new ArrayList<>();
+  private final List<Object[]> versionInserts = new ArrayList<>();
+  private final List<Object[]> versionCoreUpdates = new ArrayList<>();
+  private final List<Object[]> dependencyInserts = new ArrayList<>();
+  private long insertedRows;
+  private long updatedRows;
+
+  void insertPackage(String id, String group, String artifact) {
+    packageInserts.add(withAudit(id, group, artifact));
+  }
+
+  void insertPackageVersion(String id, String packageId, String version) {
+    versionInserts.add(withAudit(id, packageId, version));
+  }
+
+  void updatePackageVersionCore(String id, String fromCore, String latestCore) {
+    versionCoreUpdates.add(new Object[] { fromCore, latestCore, now(), getUserId(), id });
+  }
+
+  void insertPackageDependency(String id, String packageVersionId, String group, String artifact,
+      String version, String dependencyVersionId, boolean externalDependency) {
+    dependencyInserts.add(withAudit(id, packageVersionId, group, artifact, version, dependencyVersionId,
+        externalDependency ? "Y" : "N"));
+  }
+
+  /**
+   * @return true if there are statements waiting to be executed
+   */
+  boolean hasPendingRows() {
+    return !packageInserts.isEmpty() || !versionInserts.isEmpty() || !versionCoreUpdates.isEmpty()
+        || !dependencyInserts.isEmpty();
+  }
+
+  long getInsertedRows() {
+    return insertedRows;
+  }
+
+  long getUpdatedRows() {
+    return updatedRows;
+  }
+
+  /**
+   * Executes every pending statement in batches, in foreign key order.
+   */
+  void flush() {
+    if (!hasPendingRows()) {
+      return;
+    }
+    Connection connection = OBDal.getInstance().getConnection(true);
+    try {
+      insertedRows += executeBatch(connection, INSERT_PACKAGE, packageInserts);
+      insertedRows += executeBatch(connection, INSERT_PACKAGE_VERSION, versionInserts);
+      updatedRows += executeBatch(connection, UPDATE_PACKAGE_VERSION_CORE, versionCoreUpdates);
+      insertedRows += executeBatch(connection, INSERT_PACKAGE_DEPENDENCY, dependencyInserts);
+    } catch (SQLException e) {
+      throw new OBException("Failed to write synchronized packages", e);
+    }
+  }
+
+  private static int executeBatch(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      int pending = 0;
+      for (Object[] row : rows) {
+        for (int i = 0; i < row.length; i++) {
+          statement.setObject(i + 1, row[i]);
+        }
+        statement.addBatch();
+        if (++pending == BATCH_SIZE) {
+          statement.executeBatch();
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        statement.executeBatch();
+      }
+    }
+    int count = rows.size();
+    rows.clear();
+    return count;
+  }
+
+  private static Object[] withAudit(String id, Object... values) {
+    OBContext context = OBContext.getOBContext();
+    Timestamp now = now();
+    String userId = getUserId();
+    Object[] row = new Object[7 + values.length];
+    row[0] = id;
+    row[1] = context.getCurrentClient().getId();
+    row[2] = context.getCurrentOrganization().getId();
+    row[3] = now;
+    row[4] = userId;
+    row[5] = now;
+    row[6] = userId;
+    System.arraycopy(values, 0, row, 7, values.length);
+    return row;
+  }
+
+  private static Timestamp now() {
+    return new Timestamp(System.currentTimeMillis());
+  }
+
+  private static String getUserId() {
+    return OBContext.getOBContext().getUser().getId();
+  }
+}
@@ -0,0 +1,167 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Progress of a package synchronization run, saved after every committed chunk so a run that fails
+ * halfway can be resumed by the next one instead of starting again from the first page.
+ * <p>
+ * The checkpoint keeps the page being crawled, the last package of that page whose versions have been
+ * committed, and the packages crawled by the run whose dependencies have not been committed yet.
+ * It is deleted when the run completes.
+ */
+public class SyncCheckpoint {
+  private static final Logger log = LogManager.getLogger();
+  private static final String CHECKPOINT_FILE_NAME = "sync-checkpoint.json";
+
+  private final Path file;
+  private State state;
+  private final boolean resumed;
+
+  private SyncCheckpoint(Path file, State state, boolean resumed) {
+    this.file = file;
+    this.state = state;
+    this.resumed = resumed;
+  }
+
+  /**
+   * Loads the checkpoint of an unfinished run stored in the sync cache directory, or starts a new run
+   * if there is none.
+   *
+   * @return the loaded checkpoint
+   * @throws IOException
+   *     if the cache directory cannot be accessed
+   */
+  public static SyncCheckpoint load() throws IOException {
+    Path checkpointFile = SyncFiles.getCacheDirectory().resolve(CHECKPOINT_FILE_NAME);
+    State stored = SyncFiles.readJson(checkpointFile, new TypeReference<>() {
+    });
+    if (stored == null || stored.runId == null) {
+      return new SyncCheckpoint(checkpointFile, State.newRun(), false);
+    }
+    if (stored.pendingPackages == null) {
+      stored.pendingPackages = new LinkedHashMap<>();
+    }
+    return new SyncCheckpoint(checkpointFile, stored, true);
+  }
+
+  /**
+   * @return true if the checkpoint belongs to an unfinished run that is being resumed
+   */
+  public boolean isResumed() {
+    return resumed;
+  }
+
+  /**
+   * Discards the stored progress and starts a new run from the first page.
+   */
+  public void restart() {
+    state = State.newRun();
+  }
+
+  public String getRunId() {
+    return state.runId;
+  }
+
+  /**
+   * @return the page the run has to continue from
+   */
+  public int getPage() {
+    return state.page;
+  }
+
+  /**
+   * @return the last committed package of the current page, or null if the page has to be read from its start
+   */
+  public String getLastPackage() {
+    return state.lastPackage;
+  }
+
+  /**
+   * @return the {@code updated_at} value of every package whose dependencies are pending, keyed by package name
+   */
+  public Map<String, String> getPendingPackages() {
+    return Collections.unmodifiableMap(state.pendingPackages);
+  }
+
+  /**
+   * Records the position of the crawl. It must only be called once the work up to that position has
+   * been committed.
+   *
+   * @param page
+   *     the page being crawled
+   * @param lastPackage
+   *     the last committed package of the page, or null if no package of the page has been committed yet
+   */
+  public void advance(int page, String lastPackage) {
+    state.page = page;
+    state.lastPackage = lastPackage;
+  }
+
+  /**
+   * Records a crawled package whose dependencies have not been committed yet.
+   */
+  public void addPending(String packageName, String updatedAt) {
+    state.pendingPackages.put(packageName, updatedAt);
+  }
+
+  /**
+   * Records that the dependencies of a package have been committed.
+   */
+  public void removePending(String packageName) {
+    state.pendingPackages.remove(packageName);
+  }
+
+  /**
+   * Saves the checkpoint to the sync cache directory.
+   */
+  public void save() {
+    try {
+      SyncFiles.writeJson(file, state);
+    } catch (IOException e) {
+      log.error("Failed to save sync checkpoint to {}", file, e);
+    }
+  }
+
+  /**
+   * Deletes the checkpoint, once the run has completed.
+   */
+  public void delete() {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.error("Failed to delete sync checkpoint {}", file, e);
+    }
+  }
+
+  /**
+   * Stored progress of a run.
+   */
+  public static class State {
+    public String runId;
+    public int page;
+    public String lastPackage;
+    public Map<String, String> pendingPackages = new LinkedHashMap<>();
+
+    public State() {
+    }
+
+    private static State newRun() {
+      State state = new State();
+      state.runId = UUID.randomUUID().toString();
+      state.page = 1;
+      return state;
+    }
+  }
+}
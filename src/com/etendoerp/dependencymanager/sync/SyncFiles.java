@@ -0,0 +1,98 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Locates and reads/writes the local files the package synchronization keeps between runs.
+ * <p>
+ * Files are stored in the directory configured in the {@value #CACHE_DIR_PROPERTY} property of
+ * Openbravo.properties. If it is not set, an {@code etdep} folder inside {@code attach.path} is used,
+ * falling back to the temporary directory of the JVM.
+ */
+public class SyncFiles {
+  private static final Logger log = LogManager.getLogger();
+  public static final String CACHE_DIR_PROPERTY = "etdep.sync.cache.dir";
+  private static final String ATTACH_PATH_PROPERTY = "attach.path";
+  private static final String CACHE_DIR_NAME = "etdep";
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private SyncFiles() {
+  }
+
+  /**
+   * Returns the directory where the synchronization state is stored, creating it if needed.
+   *
+   * @return the cache directory
+   * @throws IOException
+   *     if the directory cannot be created
+   */
+  public static Path getCacheDirectory() throws IOException {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    String configuredDir = properties.getProperty(CACHE_DIR_PROPERTY);
+    Path dir;
+    if (StringUtils.isNotBlank(configuredDir)) {
+      dir = Paths.get(configuredDir);
+    } else if (StringUtils.isNotBlank(properties.getProperty(ATTACH_PATH_PROPERTY))) {
+      dir = Paths.get(properties.getProperty(ATTACH_PATH_PROPERTY), CACHE_DIR_NAME);
+    } else {
+      dir = Paths.get(System.getProperty("java.io.tmpdir"), CACHE_DIR_NAME);
+    }
+    return Files.createDirectories(dir);
+  }
+
+  /**
+   * Reads a JSON file of the cache directory.
+   *
+   * @param file
+   *     the file to read
+   * @param type
+   *     the type of the content
+   * @return the content of the file, or null if it does not exist or cannot be parsed
+   */
+  public static <T> T readJson(Path file, TypeReference<T> type) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      return objectMapper.readValue(file.toFile(), type);
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable sync file {}: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Writes a JSON file of the cache directory. The content is written to a temporary file first and
+   * then moved, so a crash never leaves a truncated file behind.
+   *
+   * @param file
+   *     the file to write
+   * @param content
+   *     the content to serialize
+   * @throws IOException
+   *     if the file cannot be written
+   */
+  public static void writeJson(Path file, Object content) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      objectMapper.writeValue(tempFile.toFile(), content);
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+}
@@ -0,0 +1,457 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Counters and per-phase wall times of the runs of a sync, such as the package synchronization or the
+ * update of the local packages.
+ * <p>
+ * There is a single instance per sync, shared by every caller in the JVM and registered as the
+ * {@value #OBJECT_NAME_PREFIX}{@code <sync>} MBean, which exposes the figures of the last completed run.
+ * A run belongs to the thread that starts it, and tasks handed to other threads are bound to it with
+ * {@link #bindToCurrentRun(Runnable)}. Every counter and phase is added to the run the recording thread works
+ * for, so runs of the same sync that overlap, started from different threads, keep their own figures.
+ * Retries and bytes received are recorded by the HTTP layer, which does not know the sync it works for,
+ * with the static methods of this class.
+ */
+public class SyncMetrics implements SyncMetricsMBean {
+  private static final Logger log = LogManager.getLogger();
+  public static final String OBJECT_NAME_PREFIX = "com.etendoerp.dependencymanager:type=SyncMetrics,name=";
+  private static final Map<String, SyncMetrics> metrics = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Run> threadRun = new ThreadLocal<>();
+
+  /**
+   * The figures counted by a run.
+   */
+  public enum Counter {
+    PAGES, PACKAGES, VERSIONS, POMS_FETCHED, CACHE_HITS, NOT_MODIFIED, RETRIES, BYTES_TRANSFERRED,
+    ROWS_INSERTED, ROWS_UPDATED, ROWS_UNCHANGED, ROWS_DELETED
+  }
+
+  private final String sync;
+  private final Set<Run> runs = ConcurrentHashMap.newKeySet();
+  private volatile Snapshot lastRun = new Snapshot(null, 0, new EnumMap<>(Counter.class), new LinkedHashMap<>());
+
+  /**
+   * The figures of a run that has completed.
+   *
+   * @param start
+   *     the start of the run, null if no run has completed
+   * @param wallTimeMillis
+   *     the wall time of the whole run
+   * @param counters
+   *     the value of each counter
+   * @param phaseMillis
+   *     the wall time of each phase, in the order they started
+   */
+  public record Snapshot(Instant start, long wallTimeMillis, Map<Counter, Long> counters,
+      Map<String, Long> phaseMillis) {
+
+    public long get(Counter counter) {
+      return counters.getOrDefault(counter, 0L);
+    }
+
+    public String getPhaseTimes() {
+      StringBuilder phases = new StringBuilder();
+      for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+        phases.append(phases.length() > 0 ? ", " : "").append(phase.getKey()).append('=').append(phase.getValue());
+      }
+      return phases.toString();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d ms: %d pages, %d packages, %d versions, %d POMs fetched, %d cache hits, "
+              + "%d not modified, %d retries, %d KB received, %d rows inserted, %d rows updated, %d rows unchanged, "
+              + "%d rows deleted; phases (ms): %s",
+          wallTimeMillis, get(Counter.PAGES), get(Counter.PACKAGES), get(Counter.VERSIONS),
+          get(Counter.POMS_FETCHED), get(Counter.CACHE_HITS), get(Counter.NOT_MODIFIED), get(Counter.RETRIES),
+          get(Counter.BYTES_TRANSFERRED) / 1024, get(Counter.ROWS_INSERTED), get(Counter.ROWS_UPDATED),
+          get(Counter.ROWS_UNCHANGED), get(Counter.ROWS_DELETED), getPhaseTimes());
+    }
+  }
+
+  /**
+   * The wall time of a phase of a run, recorded when it is closed.
+   */
+  public interface Phase extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /**
+   * A step of a run timed as a phase, that returns a value.
+   */
+  @FunctionalInterface
+  public interface TimedCall<T, E extends Exception> {
+    T call() throws E;
+  }
+
+  /**
+   * A step of a run timed as a phase.
+   */
+  @FunctionalInterface
+  public interface TimedStep<E extends Exception> {
+    void run() throws E;
+  }
+
+  private static final class Run {
+    private final SyncMetrics owner;
+    private final Run previous;
+    private final Instant start = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+    /**
+     * @param owner
+     *     the sync of the run
+     * @param previous
+     *     the run the starting thread worked for, which it works for again once this one finishes
+     */
+    private Run(SyncMetrics owner, Run previous) {
+      this.owner = owner;
+      this.previous = previous;
+      for (Counter counter : Counter.values()) {
+        counters.put(counter, new LongAdder());
+      }
+    }
+
+    private synchronized void addPhase(String phase, long millis) {
+      phaseMillis.merge(phase, millis, Long::sum);
+    }
+
+    private synchronized Snapshot snapshot() {
+      Map<Counter, Long> values = new EnumMap<>(Counter.class);
+      for (Map.Entry<Counter, LongAdder> counter : counters.entrySet()) {
+        values.put(counter.getKey(), counter.getValue().sum());
+      }
+      return new Snapshot(start, (System.nanoTime() - startNanos) / 1_000_000, values,
+          new LinkedHashMap<>(phaseMillis));
+    }
+  }
+
+  SyncMetrics(String sync) {
+    this.sync = sync;
+  }
+
+  /**
+   * @return the shared metrics of the sync, registered as an MBean the first time they are requested
+   */
+  public static SyncMetrics forSync(String sync) {
+    return metrics.computeIfAbsent(sync, name -> {
+      SyncMetrics syncMetrics = new SyncMetrics(name);
+      syncMetrics.register();
+      return syncMetrics;
+    });
+  }
+
+  /**
+   * Adds a value to a counter of the run the current thread works for. It is ignored if it works for none.
+   */
+  public static void addToCurrent(Counter counter, long value) {
+    addTo(threadRun.get(), counter, value);
+  }
+
+  /**
+   * Wraps a task, so the figures it records are added to the run the current thread works for, whichever
+   * thread runs it.
+   *
+   * @param task
+   *     the task to run on another thread
+   * @return the bound task, or the same task if the current thread works for no run
+   */
+  public static Runnable bindToCurrentRun(Runnable task) {
+    Run run = threadRun.get();
+    if (run == null) {
+      return task;
+    }
+    return () -> {
+      Run previousRun = threadRun.get();
+      threadRun.set(run);
+      try {
+        task.run();
+      } finally {
+        if (previousRun != null) {
+          threadRun.set(previousRun);
+        } else {
+          threadRun.remove();
+        }
+      }
+    };
+  }
+
+  private static void addTo(Run run, Counter counter, long value) {
+    if (run != null) {
+      run.counters.get(counter).add(value);
+    }
+  }
+
+  /**
+   * Wraps a body received from a repository, so the bytes read from it are added to the run the current
+   * thread works for.
+   *
+   * @param body
+   *     the body as received, before it is decompressed
+   * @return the counted body
+   */
+  public static InputStream countBytes(InputStream body) {
+    Run run = threadRun.get();
+    return new FilterInputStream(body) {
+      @Override
+      public int read() throws IOException {
+        int read = super.read();
+        if (read >= 0) {
+          addTo(run, Counter.BYTES_TRANSFERRED, 1);
+        }
+        return read;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+          addTo(run, Counter.BYTES_TRANSFERRED, read);
+        }
+        return read;
+      }
+    };
+  }
+
+  /**
+   * Starts a run of this sync, discarding the counters of a previous run of the current thread that did not
+   * finish. The current thread works for the run until it finishes.
+   */
+  public void startRun() {
+    Run previous = threadRun.get();
+    if (previous != null && previous.owner == this) {
+      runs.remove(previous);
+      previous = previous.previous;
+    }
+    Run run = new Run(this, previous);
+    runs.add(run);
+    threadRun.set(run);
+  }
+
+  /**
+   * Finishes the run of this sync the current thread works for, which becomes the last run exposed by the
+   * MBean. Runs of other threads are not affected.
+   *
+   * @return the figures of the finished run, or of the last completed run if the thread works for none
+   */
+  public Snapshot finishRun() {
+    Run run = getCurrentRun();
+    if (run == null) {
+      return lastRun;
+    }
+    if (run.previous != null) {
+      threadRun.set(run.previous);
+    } else {
+      threadRun.remove();
+    }
+    runs.remove(run);
+    lastRun = run.snapshot();
+    return lastRun;
+  }
+
+  /**
+   * @return the run of this sync the current thread works for, or null if it works for none
+   */
+  private Run getCurrentRun() {
+    Run run = threadRun.get();
+    return run != null && run.owner == this ? run : null;
+  }
+
+  /**
+   * Adds one to a counter of the current run.
+   */
+  public void increment(Counter counter) {
+    add(counter, 1);
+  }
+
+  /**
+   * Adds a value to a counter of the run of this sync the current thread works for. It is ignored if it
+   * works for none.
+   */
+  public void add(Counter counter, long value) {
+    addTo(getCurrentRun(), counter, value);
+  }
+
+  /**
+   * Starts timing a phase of the run of this sync the current thread works for. A phase timed several times
+   * accumulates its wall times.
+   *
+   * @param phase
+   *     the name of the phase
+   * @return the phase, whose wall time is recorded when it is closed
+   */
+  public Phase startPhase(String phase) {
+    Run run = getCurrentRun();
+    long startNanos = System.nanoTime();
+    return () -> {
+      if (run != null) {
+        run.addPhase(phase, (System.nanoTime() - startNanos) / 1_000_000);
+      }
+    };
+  }
+
+  /**
+   * Runs a step of the current run, timing it as a phase.
+   *
+   * @param phase
+   *     the name of the phase
+   * @param call
+   *     the step to run
+   * @return the value returned by the step
+   */
+  public <T, E extends Exception> T time(String phase, TimedCall<T, E> call) throws E {
+    Phase timer = startPhase(phase);
+    try {
+      return call.call();
+    } finally {
+      timer.close();
+    }
+  }
+
+  /**
+   * Runs a step of the current run, timing it as a phase.
+   *
+   * @param phase
+   *     the name of the phase
+   * @param step
+   *     the step to run
+   */
+  public <E extends Exception> void time(String phase, TimedStep<E> step) throws E {
+    Phase timer = startPhase(phase);
+    try {
+      step.run();
+    } finally {
+      timer.close();
+    }
+  }
+
+  /**
+   * @return the figures of the last completed run
+   */
+  public Snapshot getLastRun() {
+    return lastRun;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return !runs.isEmpty();
+  }
+
+  @Override
+  public String getLastRunStart() {
+    Instant start = lastRun.start();
+    return start != null ? start.toString() : null;
+  }
+
+  @Override
+  public long getWallTimeMillis() {
+    return lastRun.wallTimeMillis();
+  }
+
+  @Override
+  public long getPages() {
+    return lastRun.get(Counter.PAGES);
+  }
+
+  @Override
+  public long getPackages() {
+    return lastRun.get(Counter.PACKAGES);
+  }
+
+  @Override
+  public long getVersions() {
+    return lastRun.get(Counter.VERSIONS);
+  }
+
+  @Override
+  public long getPomsFetched() {
+    return lastRun.get(Counter.POMS_FETCHED);
+  }
+
+  @Override
+  public long getCacheHits() {
+    return lastRun.get(Counter.CACHE_HITS);
+  }
+
+  @Override
+  public long getNotModified() {
+    return lastRun.get(Counter.NOT_MODIFIED);
+  }
+
+  @Override
+  public long getRetries() {
+    return lastRun.get(Counter.RETRIES);
+  }
+
+  @Override
+  public long getBytesTransferred() {
+    return lastRun.get(Counter.BYTES_TRANSFERRED);
+  }
+
+  @Override
+  public long getRowsInserted() {
+    return lastRun.get(Counter.ROWS_INSERTED);
+  }
+
+  @Override
+  public long getRowsUpdated() {
+    return lastRun.get(Counter.ROWS_UPDATED);
+  }
+
+  @Override
+  public long getRowsUnchanged() {
+    return lastRun.get(Counter.ROWS_UNCHANGED);
+  }
+
+  @Override
+  public long getRowsDeleted() {
+    return lastRun.get(Counter.ROWS_DELETED);
+  }
+
+  @Override
+  public String getPhaseTimes() {
+    return lastRun.getPhaseTimes();
+  }
+
+  @Override
+  public String getSummary() {
+    return lastRun.start() != null ? sync + " " + lastRun : sync + " has not completed any run";
+  }
+
+  private void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(sync));
+      // An MBean left by a previous deployment of the module is replaced
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(this, objectName);
+    } catch (JMException e) {
+      // The metrics are still logged, only their remote inspection is lost
+      log.warn("Sync metrics of {} could not be registered as an MBean: {}", sync, e.getMessage());
+    }
+  }
+}
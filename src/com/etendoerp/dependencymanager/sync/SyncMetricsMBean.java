@@ -0,0 +1,56 @@
+package com.etendoerp.dependencymanager.sync;
+
+/**
+ * Management interface of the {@link SyncMetrics} of a sync, with the figures of its last completed run.
+ */
+public interface SyncMetricsMBean {
+
+  /**
+   * @return true while a run is in progress
+   */
+  boolean isRunning();
+
+  /**
+   * @return the start of the last completed run, in ISO-8601 format, or null if none has completed
+   */
+  String getLastRunStart();
+
+  /**
+   * @return the wall time of the last completed run, in milliseconds
+   */
+  long getWallTimeMillis();
+
+  long getPages();
+
+  long getPackages();
+
+  long getVersions();
+
+  long getPomsFetched();
+
+  long getCacheHits();
+
+  long getNotModified();
+
+  long getRetries();
+
+  long getBytesTransferred();
+
+  long getRowsInserted();
+
+  long getRowsUpdated();
+
+  long getRowsUnchanged();
+
+  long getRowsDeleted();
+
+  /**
+   * @return the wall time of each phase of the last completed run, as {@code phase=millis} pairs
+   */
+  String getPhaseTimes();
+
+  /**
+   * @return a one line summary of the last completed run
+   */
+  String getSummary();
+}
@@ -0,0 +1,167 @@
+package com.etendoerp.dependencymanager.sync;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Hands the results of the fetch workers to the single thread that writes them to the database.
+ * <p>
+ * Tasks run on the workers of a {@link ConcurrentFetcher}, which put their results in a queue bounded by the
+ * {@value #CAPACITY_PROPERTY} property. At most that many tasks are handed to the workers and not taken yet:
+ * the rest wait in the pipeline, and are handed over as the writer takes results. So fetching never runs
+ * further ahead of the writer than the capacity of the queue, and the queue of the workers stays bounded
+ * whatever the number of submitted tasks. The writer is the thread that owns the OBDal session: it
+ * takes the results in batches while the workers keep fetching, so network and database work overlap while
+ * Hibernate is only used from one thread.
+ * <p>
+ * A pipeline is not thread safe: tasks must be submitted and results taken from the writer thread.
+ *
+ * @param <K>
+ *     the type of the key identifying the resource to fetch
+ * @param <V>
+ *     the type of the fetched value
+ */
+public class SyncPipeline<K, V> {
+  public static final String CAPACITY_PROPERTY = "etdep.sync.queue.capacity";
+  private static final int DEFAULT_CAPACITY = 256;
+
+  private final ConcurrentFetcher fetcher;
+  private final BlockingQueue<Result<K, V>> queue;
+  private final int capacity;
+  private final Deque<Task<K, V>> waiting = new ArrayDeque<>();
+  private int submitted;
+  private int taken;
+
+  /**
+   * The outcome of the task of a key.
+   *
+   * @param key
+   *     the fetched key
+   * @param value
+   *     the fetched value, null if the task returned null or failed
+   * @param error
+   *     the error of the task, or null if it succeeded
+   */
+  public record Result<K, V>(K key, V value, Throwable error) {
+    public boolean isFailed() {
+      return error != null;
+    }
+  }
+
+  /**
+   * Creates a pipeline.
+   *
+   * @param fetcher
+   *     the fetcher whose workers run the tasks
+   * @param capacity
+   *     the maximum number of results waiting for the writer, values lower than 1 are treated as 1
+   */
+  public SyncPipeline(ConcurrentFetcher fetcher, int capacity) {
+    this.fetcher = fetcher;
+    this.capacity = Math.max(1, capacity);
+    this.queue = new ArrayBlockingQueue<>(this.capacity);
+  }
+
+  /**
+   * Creates a pipeline with the capacity configured in the {@value #CAPACITY_PROPERTY} property of
+   * Openbravo.properties, or {@value #DEFAULT_CAPACITY} if it is not set.
+   *
+   * @param fetcher
+   *     the fetcher whose workers run the tasks
+   * @return a new pipeline
+   */
+  public static <K, V> SyncPipeline<K, V> fromProperties(ConcurrentFetcher fetcher) {
+    Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return new SyncPipeline<>(fetcher,
+        NumberUtils.toInt(properties.getProperty(CAPACITY_PROPERTY), DEFAULT_CAPACITY));
+  }
+
+  /**
+   * Runs the task for a key on the workers, right away if fewer tasks than the capacity are waiting to be
+   * taken, or once the writer has taken enough results otherwise. Its result, or its error, is queued for the
+   * writer. Every submitted task queues exactly one result, even if it fails with an {@link Error}, so the
+   * writer never waits for a result that will not come.
+   *
+   * @param key
+   *     the key to fetch
+   * @param task
+   *     the fetch to run, it must not access OBDal
+   */
+  public void submit(K key, ConcurrentFetcher.FetchTask<K, V> task) {
+    waiting.add(new Task<>(key, task));
+    startWaiting();
+  }
+
+  /**
+   * Hands the waiting tasks to the workers while fewer than the capacity have results not taken yet.
+   */
+  private void startWaiting() {
+    while (!waiting.isEmpty() && submitted - taken < capacity) {
+      start(waiting.peek());
+      waiting.poll();
+    }
+  }
+
+  private void start(Task<K, V> pending) {
+    ConcurrentFetcher.FetchTask<K, V> task = pending.task();
+    fetcher.fetchAsync(pending.key(), k -> {
+      Result<K, V> result;
+      try {
+        result = new Result<>(k, task.fetch(k), null);
+      } catch (Throwable e) {
+        result = new Result<>(k, null, e);
+      }
+      queue.put(result);
+      return null;
+    });
+    // Only counted once the task has been accepted, otherwise it is left waiting
+    submitted++;
+  }
+
+  /**
+   * Waits until at least one result is ready and takes every ready result.
+   *
+   * @return the ready results in the order they were completed, or an empty list once the results of every
+   *     submitted task have been taken
+   * @throws OBException
+   *     if the thread is interrupted while waiting
+   */
+  public List<Result<K, V>> takeReady() {
+    List<Result<K, V>> results = new ArrayList<>();
+    if (taken >= submitted) {
+      return results;
+    }
+    try {
+      results.add(queue.take());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OBException("Interrupted while waiting for the fetch workers", e);
+    }
+    queue.drainTo(results);
+    taken += results.size();
+    startWaiting();
+    return results;
+  }
+
+  /**
+   * @return the number of submitted tasks whose result has not been taken yet
+   */
+  public int getPending() {
+    return submitted - taken + waiting.size();
+  }
+
+  /**
+   * A submitted task waiting to be handed to the workers.
+   */
+  private record Task<K, V>(K key, ConcurrentFetcher.FetchTask<K, V> task) {
+  }
+}
@@ -1,25 +1,36 @@
 package com.etendoerp.dependencymanager.util;
 
 import com.etendoerp.dependencymanager.data.Package;
-import com.etendoerp.dependencymanager.data.PackageDependency;
-import com.etendoerp.dependencymanager.data.PackageVersion;
-import org.apache.commons.lang.BooleanUtils;
+import com.etendoerp.dependencymanager.sync.CatalogDeltaWriter;
+import com.etendoerp.dependencymanager.sync.ContentEncoding;
+import com.etendoerp.dependencymanager.sync.DatasetImportState;
+import com.etendoerp.dependencymanager.sync.PackageCatalog;
+import com.etendoerp.dependencymanager.sync.PackageDatasetImporter;
+import com.etendoerp.dependencymanager.sync.PackageDatasetReader;
+import com.etendoerp.dependencymanager.sync.SyncMetrics;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.dom4j.Element;
+import org.openbravo.base.exception.OBException;
 import org.openbravo.base.session.OBPropertiesProvider;
 import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.core.SessionHandler;
 import org.openbravo.dal.service.OBDal;
-import org.openbravo.dal.xml.XMLUtil;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.stream.XMLStreamException;
 
 public class UpdateLocalPackagesUtil {
 
@@ -39,8 +50,12 @@ public class UpdateLocalPackagesUtil {
   public static final String DEPENDENCY_VERSION = "dependencyVersion";
   public static final String ISBUNDLE = "isBundle";
   public static final String DATASET_FILE_URL = "https://raw.githubusercontent.com/etendosoftware/com.etendoerp.dependencymanager/<branch>/referencedata/standard/Packages_dataset.xml";
+  public static final String CATALOG_URL = "https://raw.githubusercontent.com/etendosoftware/com.etendoerp.dependencymanager/<branch>/referencedata/catalog/";
 
+  public static final String METRICS_NAME = "UpdateLocalPackages";
+  private static final Logger log = LogManager.getLogger();
   private static final String BRANCH_LOCAL_PACKAGES_PROPERTY = "branch.update.local.packages";
+  private static final String SHA_256 = "SHA-256";
 
   private UpdateLocalPackagesUtil() {
   }
@@ -48,127 +63,213 @@ public class UpdateLocalPackagesUtil {
   /**
    * This method is overridden from the DalBaseProcess class.
    * It reads an XML file and processes its elements to update local packages, versions, and dependencies.
+   * The dataset is streamed from the HTTP response in a single pass into staging tables, which are then
+   * applied with one upsert per table by the {@link PackageDatasetImporter}, which only writes the rows that
+   * have changed.
+   * If the published {@link PackageCatalog} has deltas from the revision of the last import, only those
+   * deltas are applied. The full dataset is imported otherwise, or if any delta cannot be applied.
+   * The dataset is requested with the validators of the last import kept in the {@link DatasetImportState},
+   * so an unchanged dataset is answered with a 304 and nothing is parsed nor written. A dataset downloaded
+   * again with the same SHA-256 as the last import is not applied either.
+   * The run is measured in the {@link SyncMetrics} named {@value #METRICS_NAME}, whose summary is logged.
    *
    * @throws Exception If an error occurs during the execution of the method.
    */
   public static void update() throws IOException {
+    SyncMetrics metrics = SyncMetrics.forSync(METRICS_NAME);
+    metrics.startRun();
     try {
       OBContext.setAdminMode(true);
 
       Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
       String updateLocalPackages = properties.getProperty(BRANCH_LOCAL_PACKAGES_PROPERTY, "main");
       String dataSetFileUrl = DATASET_FILE_URL.replace("<branch>", updateLocalPackages);
-      File dataSetFile = downloadFile(dataSetFileUrl);
-      try (FileInputStream fileInputStream = new FileInputStream(dataSetFile)) {
-        var xmlRootElement = XMLUtil.getInstance().getRootElement(fileInputStream);
-        processPackages(xmlRootElement);
-        processPackageVersions(xmlRootElement);
-        processPackageDependencies(xmlRootElement);
-      } catch (Exception e) {
-        throw new IOException("Error when updating packages", e);
+      String catalogUrl = CATALOG_URL.replace("<branch>", updateLocalPackages);
+      DatasetImportState importState = DatasetImportState.load(dataSetFileUrl);
+      if (!hasLocalPackages()) {
+        // The state may belong to a database that has been recreated since
+        importState.clear();
+      }
+      PackageCatalog catalog = fetchCatalog(catalogUrl);
+      Long revision = importState.getRevision();
+      if (catalog != null && revision != null && revision == catalog.revision) {
+        metrics.increment(SyncMetrics.Counter.NOT_MODIFIED);
+        log.info("Local packages are already at catalog revision {}", revision);
+        return;
+      }
+      if (catalog != null && catalog.hasDeltasFrom(revision) && applyDeltas(catalogUrl, revision, catalog, metrics)) {
+        importState.markDeltasApplied(catalog);
+        importState.save();
+        return;
       }
+      importDataset(dataSetFileUrl, importState, catalog, metrics);
     } finally {
       OBContext.restorePreviousMode();
+      log.info("Local packages update metrics {}", metrics.finishRun());
     }
   }
 
-  private static File downloadFile(String fileUrl) throws IOException {
-    URL url = new URL(fileUrl);
-    File tempFile = File.createTempFile("download", null);
-
-    try (InputStream in = url.openStream()) {
-      Files.copy(in,tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-    }
-    return tempFile;
-  }
-
   /**
-   * This method processes the package elements from the XML file.
-   * It creates or updates a Package object for each package element.
+   * Applies the deltas of the catalog from the given revision to the latest one, in a single transaction.
    *
-   * @param xmlRootElement The root element of the XML file.
+   * @return true if every delta has been applied, false if the chain is broken and nothing has been applied
    */
-  private static void processPackages(Element xmlRootElement) {
-    for (Element packageElement : xmlRootElement.elements(ETDEP_PACKAGE)) {
-      String id = packageElement.elementText(ID);
-      Package pkg = OBDal.getInstance().get(Package.class, id);
-      if (pkg == null) {
-        pkg = new Package();
-        pkg.setNewOBObject(true);
-        pkg.setId(id);
+  private static boolean applyDeltas(String catalogUrl, long fromRevision, PackageCatalog catalog,
+      SyncMetrics metrics) {
+    try {
+      metrics.time("deltas", () -> {
+        for (long revision = fromRevision + 1; revision <= catalog.revision; revision++) {
+          applyDelta(catalogUrl + PackageCatalog.deltaFileName(revision), revision, metrics);
+        }
+        SessionHandler.getInstance().commitAndStart();
+      });
+      log.info("Local packages updated from catalog revision {} to {}", fromRevision, catalog.revision);
+      return true;
+    } catch (Exception e) {
+      log.warn("Catalog deltas from revision {} could not be applied, importing the whole packages dataset",
+          fromRevision, e);
+      OBDal.getInstance().rollbackAndClose();
+      return false;
+    }
+  }
+
+  private static void applyDelta(String deltaUrl, long revision, SyncMetrics metrics)
+      throws IOException, XMLStreamException {
+    URLConnection connection = new URL(deltaUrl).openConnection();
+    ContentEncoding.accept(connection);
+    try (InputStream in = openBody(connection)) {
+      PackageDatasetImporter importer = PackageDatasetImporter.begin();
+      AtomicBoolean revisionChecked = new AtomicBoolean();
+      PackageDatasetReader.read(in, row -> {
+        if (CatalogDeltaWriter.REVISION_ROW.equals(row.entityName())) {
+          checkRevision(row, revision);
+          revisionChecked.set(true);
+        } else if (importer.stage(row)) {
+          countRow(metrics, row.entityName());
+        }
+      });
+      if (!revisionChecked.get()) {
+        throw new OBException("The catalog delta " + deltaUrl + " has no revision");
       }
-      pkg.setGroup(packageElement.elementText(GROUP));
-      pkg.setArtifact(packageElement.elementText(ARTIFACT));
-      pkg.setActive(
-          BooleanUtils.toBooleanObject(packageElement.elementText(ACTIVE)));
-      pkg.setBundle(
-          BooleanUtils.toBooleanObject(packageElement.elementText(ISBUNDLE)));
-      OBDal.getInstance().save(pkg);
+      importer.apply();
+      countImportedRows(metrics, importer);
+    }
+  }
+
+  private static void checkRevision(PackageDatasetReader.DatasetRow row, long revision) {
+    long deltaRevision = NumberUtils.toLong(row.get(CatalogDeltaWriter.REVISION), -1);
+    long previousRevision = NumberUtils.toLong(row.get(CatalogDeltaWriter.PREVIOUS_REVISION), -1);
+    if (deltaRevision != revision || previousRevision != revision - 1) {
+      throw new OBException("Expected the catalog delta of revision " + revision + " but found the one from "
+          + previousRevision + " to " + deltaRevision);
     }
-    OBDal.getInstance().flush();
   }
 
   /**
-   * This method processes the package version elements from the XML file.
-   * It creates or updates a PackageVersion object for each package version element.
-   *
-   * @param xmlRootElement The root element of the XML file.
+   * Imports the whole dataset, unless it has not changed since the last import.
    */
-  private static void processPackageVersions(Element xmlRootElement) {
-    for (Element packageElement : xmlRootElement.elements(ETDEP_PACKAGE_VERSION)) {
-      String id = packageElement.elementText(ID);
-      PackageVersion packageVersion = OBDal.getInstance().get(PackageVersion.class, id);
-      if (packageVersion == null) {
-        packageVersion = new PackageVersion();
-        packageVersion.setNewOBObject(true);
-        packageVersion.setId(id);
+  private static void importDataset(String dataSetFileUrl, DatasetImportState importState, PackageCatalog catalog,
+      SyncMetrics metrics) throws IOException {
+    try {
+      HttpURLConnection connection = openDataset(dataSetFileUrl, importState);
+      if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        metrics.increment(SyncMetrics.Counter.NOT_MODIFIED);
+        log.info("Packages dataset not modified since the last import");
+        // A dataset imported before the catalog was published gets its revision
+        if (importState.getRevision() == null && catalog != null) {
+          importState.markRevision(catalog);
+          importState.save();
+        }
+        return;
+      }
+      MessageDigest digest = newSha256Digest();
+      try (InputStream in = new DigestInputStream(openBody(connection), digest)) {
+        PackageDatasetImporter importer = PackageDatasetImporter.begin();
+        metrics.time("stage", () -> {
+          PackageDatasetReader.read(in, row -> {
+            if (importer.stage(row)) {
+              countRow(metrics, row.entityName());
+            }
+          });
+          // Whatever follows the root element is also part of the hashed content
+          in.transferTo(OutputStream.nullOutputStream());
+        });
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        if (importState.isImported(sha256)) {
+          importer.discard();
+          metrics.increment(SyncMetrics.Counter.NOT_MODIFIED);
+          log.info("Packages dataset unchanged since the last import");
+        } else {
+          metrics.time("apply", importer::apply);
+          countImportedRows(metrics, importer);
+        }
+        // The state is only saved once the import is committed, so a failed import is never skipped
+        SessionHandler.getInstance().commitAndStart();
+        importState.markImported(connection, sha256, catalog);
+        importState.save();
       }
-      packageVersion.setPackage(OBDal.getInstance()
-          .get(Package.class, packageElement.element(ETDEP_PACKAGE_TAG).attributeValue(ID)));
-      packageVersion.setVersion(packageElement.elementText(VERSION));
-      packageVersion.setActive(
-          BooleanUtils.toBooleanObject(packageElement.elementText(ACTIVE)));
-      packageVersion.setFromCore(packageElement.elementText(FROM_CORE));
-      packageVersion.setLatestCore(packageElement.elementText(LATEST_CORE));
-
-      OBDal.getInstance().save(packageVersion);
+    } catch (Exception e) {
+      throw new IOException("Error when updating packages", e);
     }
-    OBDal.getInstance().flush();
+  }
+
+  private static void countImportedRows(SyncMetrics metrics, PackageDatasetImporter importer) {
+    metrics.add(SyncMetrics.Counter.ROWS_INSERTED, importer.getInsertedRows());
+    metrics.add(SyncMetrics.Counter.ROWS_UPDATED, importer.getUpdatedRows());
+    metrics.add(SyncMetrics.Counter.ROWS_UNCHANGED, importer.getUnchangedRows());
+    metrics.add(SyncMetrics.Counter.ROWS_DELETED, importer.getDeletedRows());
+    log.info("Packages dataset imported: {} rows inserted, {} rows updated, {} rows unchanged, {} rows deleted",
+        importer.getInsertedRows(), importer.getUpdatedRows(), importer.getUnchangedRows(),
+        importer.getDeletedRows());
   }
 
   /**
-   * This method processes the package dependency elements from the XML file.
-   * It creates or updates a PackageDependency object for each package dependency element.
-   *
-   * @param xmlRootElement The root element of the XML file.
+   * @return the published catalog, or null if it is not available, as in the branches published before it
    */
-  private static void processPackageDependencies(Element xmlRootElement) {
-    for (Element packageElement : xmlRootElement.elements(ETDEP_PACKAGE_DEPENDENCY)) {
-      String id = packageElement.elementText(ID);
-      PackageDependency pkgDep = OBDal.getInstance().get(PackageDependency.class, id);
-      if (pkgDep == null) {
-        pkgDep = new PackageDependency();
-        pkgDep.setNewOBObject(true);
-        pkgDep.setId(id);
-      }
-      pkgDep.setPackageVersion(OBDal.getInstance()
-          .get(PackageVersion.class,
-              packageElement.element(ETDEP_PACKAGE_VERSION_TAG).attributeValue(ID)));
-      pkgDep.setGroup(packageElement.elementText(GROUP));
-      pkgDep.setArtifact(packageElement.elementText(ARTIFACT));
-      pkgDep.setVersion(packageElement.elementText(VERSION));
-      pkgDep.setActive(
-          BooleanUtils.toBooleanObject(packageElement.elementText(ACTIVE)));
-      pkgDep.setExternalDependency(
-          BooleanUtils.toBooleanObject(packageElement.elementText(EXTERNAL_DEPENDENCY)));
-      PackageVersion dependencyVersion = null;
-      if (packageElement.element(DEPENDENCY_VERSION).attributeCount() > 1) {
-        dependencyVersion = OBDal.getInstance().get(PackageVersion.class, packageElement.element(DEPENDENCY_VERSION).attributeValue(ID));
+  private static PackageCatalog fetchCatalog(String catalogUrl) {
+    try {
+      URLConnection connection = new URL(catalogUrl + PackageCatalog.CATALOG_FILE_NAME).openConnection();
+      ContentEncoding.accept(connection);
+      try (InputStream in = openBody(connection)) {
+        return PackageCatalog.read(in);
       }
-      pkgDep.setDependencyVersion(dependencyVersion);
-      OBDal.getInstance().save(pkgDep);
+    } catch (IOException e) {
+      log.info("Packages catalog not available at {}, the whole packages dataset is used: {}", catalogUrl,
+          e.getMessage());
+      return null;
+    }
+  }
+
+  private static MessageDigest newSha256Digest() {
+    try {
+      return MessageDigest.getInstance(SHA_256);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new OBException(e);
     }
-    OBDal.getInstance().flush();
   }
 
+  private static boolean hasLocalPackages() {
+    return OBDal.getInstance().createQuery(Package.class, "").setMaxResult(1).uniqueResult() != null;
+  }
+
+  private static void countRow(SyncMetrics metrics, String entityName) {
+    if (ETDEP_PACKAGE.equals(entityName)) {
+      metrics.increment(SyncMetrics.Counter.PACKAGES);
+    } else if (ETDEP_PACKAGE_VERSION.equals(entityName)) {
+      metrics.increment(SyncMetrics.Counter.VERSIONS);
+    }
+  }
+
+  private static HttpURLConnection openDataset(String fileUrl, DatasetImportState importState) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(fileUrl).openConnection();
+    ContentEncoding.accept(connection);
+    importState.addConditionalHeaders(connection);
+    return connection;
+  }
+
+  private static InputStream openBody(URLConnection connection) throws IOException {
+    return ContentEncoding.decode(SyncMetrics.countBytes(connection.getInputStream()),
+        connection.getContentEncoding());
+  }
 }
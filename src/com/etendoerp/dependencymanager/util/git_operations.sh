@@ -16,12 +16,14 @@ function pushAndCommit(){
     git checkout main > /dev/null 2>&1 || { echo "Error: Could not checkout to branch 'main'."; exit 1; }
     git pull > /dev/null 2>&1 || { echo "Error: Could not perform pull."; exit 1; }
 
-    # Check if there are changes in the specified file
-    if git diff --quiet HEAD -- referencedata/standard/Packages_dataset.xml; then
+    # Check if there are changes in the dataset or in the catalog and its deltas
+    if git diff --quiet HEAD -- referencedata/standard/Packages_dataset.xml referencedata/catalog \
+        && [ -z "$(git ls-files --others --exclude-standard -- referencedata/catalog)" ]; then
         echo "No changes in the specified file to commit or push."
     else
         echo "There are changes in the specified file. Proceeding with commit and push."
         git add referencedata/standard/Packages_dataset.xml || { echo "Error: Could not add the file to commit."; exit 1; }
+        git add --all -- referencedata/catalog || { echo "Error: Could not add the catalog to commit."; exit 1; }
         git commit -m "Update packages dataset :package:" || { echo "Error: Could not commit."; exit 1; }
         git push || { echo "Error: Could not push."; exit 1; }
     fi